@@ -0,0 +1,92 @@
+package sorts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Same inputs as PrimitiveSortBenchmark, boxed - Arrays.sort of objects is
+ * TimSort, a stable merge sort, so it is never quadratic and is linear on
+ * sorted and reversed input, but every compare follows two references.
+ * Compare the scores with the int[] ones to see what boxing costs.
+ *
+ * 10^8 Integers take a few GB, so sizes go up to 10^7 by default; more with
+ * -p size=100000000 -jvmArgsAppend -Xmx24g. Otherwise forks run with the
+ * default heap, a quarter of the memory of the machine - a few hundred MB
+ * are enough for 10^7.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class BoxedSortBenchmark {
+
+	private static final Comparator<Integer> ORDER = Comparator.naturalOrder();
+
+	@Param({"1000", "100000", "10000000"})
+	private int size;
+
+	@Param({"RANDOM", "SORTED", "REVERSED", "DUPLICATES"})
+	private Distribution distribution;
+
+	private Integer[] input;
+
+	@Setup
+	public void setUp() {
+		input = distribution.boxed(size);
+	}
+
+	@Benchmark
+	public Integer[] baseline() {
+		return input.clone();
+	}
+
+	@Benchmark
+	public Integer[] arraysSort() {
+		Integer[] a = input.clone();
+		Arrays.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public Integer[] arraysParallelSort() {
+		Integer[] a = input.clone();
+		Arrays.parallelSort(a);
+		return a;
+	}
+
+	@Benchmark
+	public Integer[] quickThreeWayRecursive() {
+		Integer[] a = input.clone();
+		QuickThreeWaySort.Recursive.sort(a, ORDER);
+		return a;
+	}
+
+	@Benchmark
+	public Integer[] quickThreeWayIterative() {
+		Integer[] a = input.clone();
+		QuickThreeWaySort.Iterative.sort(a, ORDER);
+		return a;
+	}
+
+	@Benchmark
+	public Integer[] quickThreeWayParallel() {
+		Integer[] a = input.clone();
+		QuickThreeWaySort.Parallel.sort(a, ORDER);
+		return a;
+	}
+}
@@ -0,0 +1,69 @@
+package sorts;
+
+import java.util.SplittableRandom;
+
+/**
+ * Inputs of the sort benchmarks, the same seed gives the same keys in every
+ * fork and every run.
+ */
+public enum Distribution {
+	RANDOM,
+	SORTED,
+	REVERSED,
+	DUPLICATES; // 100 distinct keys
+
+	static final long SEED = 42;
+
+	int[] ints(int n) {
+		SplittableRandom random = new SplittableRandom(SEED);
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++) {
+			switch (this) {
+				case RANDOM:
+					a[i] = random.nextInt();
+					break;
+				case SORTED:
+					a[i] = i;
+					break;
+				case REVERSED:
+					a[i] = n - i;
+					break;
+				case DUPLICATES:
+					a[i] = random.nextInt(100);
+					break;
+			}
+		}
+		return a;
+	}
+
+	long[] longs(int n) {
+		SplittableRandom random = new SplittableRandom(SEED);
+		long[] a = new long[n];
+		for (int i = 0; i < n; i++) {
+			switch (this) {
+				case RANDOM:
+					a[i] = random.nextLong();
+					break;
+				case SORTED:
+					a[i] = i;
+					break;
+				case REVERSED:
+					a[i] = n - i;
+					break;
+				case DUPLICATES:
+					a[i] = random.nextInt(100);
+					break;
+			}
+		}
+		return a;
+	}
+
+	Integer[] boxed(int n) {
+		int[] keys = ints(n);
+		Integer[] a = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			a[i] = keys[i];
+		}
+		return a;
+	}
+}
@@ -0,0 +1,111 @@
+package sorts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Same as PrimitiveSortBenchmark for the long[] overloads - twice the bytes
+ * per key, and twice the passes of the radix sort.
+ *
+ * 10^8 longs need about 3 GB, so sizes go up to 10^7 by default; more with
+ * -p size=100000000 -jvmArgsAppend -Xmx4g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class LongSortBenchmark {
+
+	@Param({"1000", "100000", "10000000"})
+	private int size;
+
+	@Param({"RANDOM", "SORTED", "REVERSED", "DUPLICATES"})
+	private Distribution distribution;
+
+	private long[] input;
+
+	@Setup
+	public void setUp() {
+		input = distribution.longs(size);
+	}
+
+	@Benchmark
+	public long[] baseline() {
+		return input.clone();
+	}
+
+	@Benchmark
+	public long[] arraysSort() {
+		long[] a = input.clone();
+		Arrays.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public long[] arraysParallelSort() {
+		long[] a = input.clone();
+		Arrays.parallelSort(a);
+		return a;
+	}
+
+	@Benchmark
+	public long[] quickThreeWayRecursive() {
+		long[] a = input.clone();
+		QuickThreeWaySort.Recursive.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public long[] quickThreeWayIterative() {
+		long[] a = input.clone();
+		QuickThreeWaySort.Iterative.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public long[] quickThreeWayParallel() {
+		long[] a = input.clone();
+		QuickThreeWaySort.Parallel.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public long[] radix() {
+		long[] a = input.clone();
+		RadixSort.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public long[] radixParallel() {
+		long[] a = input.clone();
+		RadixSort.parallelSort(a);
+		return a;
+	}
+
+	/**
+	 * Heap sort - bottom up build of a LongHeap and polls.
+	 */
+	@Benchmark
+	public long[] heap() {
+		long[] a = new long[size];
+		LongHeap heap = new LongHeap(false, LongHeap.DEFAULT_ARITY, size);
+		heap.addAll(input, 0, size);
+		heap.pollInto(a, 0, size);
+		return a;
+	}
+}
@@ -0,0 +1,120 @@
+package sorts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every in-memory sort of the package on an int[], against Arrays.sort
+ * (dual-pivot quick sort) and Arrays.parallelSort.
+ *
+ * Every call sorts a fresh clone of the input, baseline is the clone alone
+ * - how much of a score is the copy. The sorted array is returned, so JMH
+ * sinks it into a blackhole.
+ *
+ * Run one size or sort with -p size=1000 or a regexp of the methods:
+ * java -jar target/benchmarks.jar PrimitiveSortBenchmark.radix -p size=10000000
+ *
+ * Forks run with the default heap, a quarter of the memory of the machine.
+ * 10^8 ints need about 2 GB - the input, its clone and the buffer of the
+ * radix sort - so on a small machine give the forks more with
+ * -jvmArgsAppend -Xmx2g, or leave that size out with -p size=1000,100000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class PrimitiveSortBenchmark {
+
+	@Param({"1000", "100000", "10000000", "100000000"})
+	private int size;
+
+	@Param({"RANDOM", "SORTED", "REVERSED", "DUPLICATES"})
+	private Distribution distribution;
+
+	private int[] input;
+
+	@Setup
+	public void setUp() {
+		input = distribution.ints(size);
+	}
+
+	@Benchmark
+	public int[] baseline() {
+		return input.clone();
+	}
+
+	@Benchmark
+	public int[] arraysSort() {
+		int[] a = input.clone();
+		Arrays.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public int[] arraysParallelSort() {
+		int[] a = input.clone();
+		Arrays.parallelSort(a);
+		return a;
+	}
+
+	@Benchmark
+	public int[] quickThreeWayRecursive() {
+		int[] a = input.clone();
+		QuickThreeWaySort.Recursive.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public int[] quickThreeWayIterative() {
+		int[] a = input.clone();
+		QuickThreeWaySort.Iterative.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public int[] quickThreeWayParallel() {
+		int[] a = input.clone();
+		QuickThreeWaySort.Parallel.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public int[] radix() {
+		int[] a = input.clone();
+		RadixSort.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public int[] radixParallel() {
+		int[] a = input.clone();
+		RadixSort.parallelSort(a);
+		return a;
+	}
+
+	/**
+	 * Heap sort - bottom up build of an IntHeap and polls.
+	 */
+	@Benchmark
+	public int[] heap() {
+		int[] a = new int[size];
+		IntHeap heap = new IntHeap(false, IntHeap.DEFAULT_ARITY, size);
+		heap.addAll(input, 0, size);
+		heap.pollInto(a, 0, size);
+		return a;
+	}
+}
@@ -1,16 +1,18 @@
 package graph.shortest_paths;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.PriorityQueue;
+
+import sorts.IndexMinHeap;
 
 /**
  * Dijkstra Find SP from source to target in a weighted graph with positive
  * wights.
  *
  * Note: - graph might have cycles - graph should not contain negative weights -
- * avg time O(E+V), worst O(E+V)
+ * avg time O(E log V), worst O(E log V) - IndexMinHeap keeps every vertex at
+ * most once, a shorter path decreases its key, so the heap holds up to V
+ * vertices, not up to E duplicates
  */
 public class Dijkstra {
 
@@ -20,28 +22,28 @@ public class Dijkstra {
 	 */
 	public static int find(int source, int target,
 			Map<Integer, Map<Integer, Integer>> g, int n) {
-		PriorityQueue<int[]> pq = new PriorityQueue<>((a, b) -> a[1] - b[1]);
-		pq.add(new int[]{source, 0});
+		IndexMinHeap pq = new IndexMinHeap(n);
+		pq.insert(source, 0);
 		int[] distTo = new int[n];
 		Arrays.fill(distTo, Integer.MAX_VALUE);
 		distTo[source] = 0;
 		while (!pq.isEmpty()) {
-			int[] cur = pq.poll();
-			if (cur[0] == target) return distTo[target];
-			for (int w : g.getOrDefault(cur[0], new HashMap<>()).keySet()) {
-				relaxVertex(cur[0], w, g, pq, distTo);
+			int v = pq.pollMin();
+			if (v == target) return distTo[target];
+			Map<Integer, Integer> adj = g.get(v);
+			if (adj == null) continue;
+			for (Map.Entry<Integer, Integer> e : adj.entrySet()) {
+				relaxVertex(v, e.getKey(), e.getValue(), pq, distTo);
 			}
 		}
 		return -1;
 	}
 
-	private static void relaxVertex(int v, int w,
-			Map<Integer, Map<Integer, Integer>> g, PriorityQueue<int[]> pq,
-			int[] distTo) {
-		if (distTo[w] > distTo[v] + g.get(v).get(w)) {
-			distTo[w] = distTo[v] + g.get(v).get(w);
-			//            pq.removeIf(x -> x[0] == w);
-			pq.add(new int[]{w, distTo[v] + g.get(v).get(w)});
+	private static void relaxVertex(int v, int w, int weight,
+			IndexMinHeap pq, int[] distTo) {
+		if (distTo[w] > distTo[v] + weight) {
+			distTo[w] = distTo[v] + weight;
+			pq.insertOrDecrease(w, distTo[w]);
 		}
 	}
-}
\ No newline at end of file
+}
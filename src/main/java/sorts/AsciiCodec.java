@@ -0,0 +1,92 @@
+package sorts;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decimal numbers straight from and to bytes, without String, so parsing the
+ * input and formatting the runs allocates nothing per number.
+ *
+ * Both work with non-positive numbers, like Long.parseLong does - there is
+ * one more of them, so Long.MIN_VALUE needs no special case.
+ */
+final class AsciiCodec {
+
+	// "-9223372036854775808"
+	static final int MAX_LONG_WIDTH = 20;
+
+	private AsciiCodec() {
+	}
+
+	/**
+	 * Same as Integer.parseInt on bytes [from, to) of b.
+	 *
+	 * @throws NumberFormatException if it is not an int
+	 */
+	static int parseInt(byte[] b, int from, int to) {
+		long v = parseLong(b, from, to);
+		if (v != (int) v) {
+			throw error(b, from, to);
+		}
+		return (int) v;
+	}
+
+	/**
+	 * Same as Long.parseLong on bytes [from, to) of b.
+	 *
+	 * @throws NumberFormatException if it is not a long
+	 */
+	static long parseLong(byte[] b, int from, int to) {
+		int i = from;
+		boolean neg = false;
+		if (i < to && (b[i] == '-' || b[i] == '+')) {
+			neg = b[i] == '-';
+			i++;
+		}
+		if (i == to) {
+			throw error(b, from, to);
+		}
+		long limit = neg ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long v = 0;
+		for (; i < to; i++) {
+			int d = b[i] - '0';
+			if (d < 0 || d > 9 || v < limit / 10) {
+				throw error(b, from, to);
+			}
+			v *= 10;
+			if (v < limit + d) {
+				throw error(b, from, to);
+			}
+			v -= d;
+		}
+		return neg ? v : -v;
+	}
+
+	/**
+	 * Writes the digits of v to b starting at off, b needs MAX_LONG_WIDTH
+	 * bytes of space.
+	 *
+	 * @return index after the last digit
+	 */
+	static int format(long v, byte[] b, int off) {
+		long n = v < 0 ? v : -v;
+		int len = v < 0 ? 2 : 1;
+		for (long t = n / 10; t != 0; t /= 10) {
+			len++;
+		}
+		int end = off + len;
+		int i = end;
+		do {
+			b[--i] = (byte) ('0' - n % 10);
+			n /= 10;
+		} while (n != 0);
+		if (v < 0) {
+			b[--i] = '-';
+		}
+		return end;
+	}
+
+	private static NumberFormatException error(byte[] b, int from, int to) {
+		return new NumberFormatException("For input string: \""
+				+ new String(b, from, to - from, StandardCharsets.ISO_8859_1) + "\"");
+	}
+}
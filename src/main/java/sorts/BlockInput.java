@@ -0,0 +1,20 @@
+package sorts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * File read block by block, see {@link RunStorage}.
+ */
+interface BlockInput extends Closeable {
+
+	/**
+	 * Every block is blockSize bytes long except the last one, so a fixed
+	 * width number never crosses blocks if blockSize is a multiple of its
+	 * width. The buffer is only valid until the next call.
+	 *
+	 * @return next block ready for reading, null if the file is over
+	 */
+	ByteBuffer next() throws IOException;
+}
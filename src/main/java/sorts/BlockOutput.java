@@ -0,0 +1,23 @@
+package sorts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * File written block by block, see {@link RunStorage}.
+ */
+interface BlockOutput extends Closeable {
+
+	/**
+	 * @return buffer to put the bytes into, blockSize bytes of space
+	 */
+	ByteBuffer buffer();
+
+	/**
+	 * Writes out the buffer.
+	 *
+	 * @return empty buffer to continue with, might be a different one
+	 */
+	ByteBuffer flush() throws IOException;
+}
@@ -0,0 +1,193 @@
+package sorts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static reader.IOUtils.removeFile;
+
+/**
+ * Manifest of an ExternalSort - an append-only text file with one line per
+ * durable step, fields are separated by tabs:
+ *
+ * options ... - what the sort was started with
+ * run name lines - run is written, lines of the input are in runs so far
+ * runs lines name1 name2 ... - same for runs that are only complete together
+ * split - all runs are written
+ * merge newName name1 name2 ... - names are merged into newName
+ *
+ * A step is written only after its file is forced to the disk, and the
+ * manifest is forced after every line, so after a crash every step in the
+ * manifest is complete and everything after the last step is redone. A line
+ * without the newline was cut by the crash and does not count. Replaying the
+ * steps gives the same queue of files the sort had, since the merge plan
+ * only depends on it. The manifest stays after the sort, resuming a finished
+ * sort just returns its result.
+ *
+ * Without a manifest file every method does nothing.
+ */
+final class Checkpoint {
+
+	private final String manifest;
+	private final Deque<String> files = new ArrayDeque<>(); // runs and merged files, in merge order
+	private long lines; // input lines in the written runs
+	private int runs;
+	private int merges;
+	private boolean split;
+
+	private Checkpoint(String manifest) {
+		this.manifest = manifest;
+	}
+
+	static Checkpoint none() {
+		return new Checkpoint(null);
+	}
+
+	/**
+	 * New manifest, an old one is overwritten.
+	 */
+	static Checkpoint start(String manifest, String options) throws IOException {
+		Checkpoint c = new Checkpoint(manifest);
+		try (FileOutputStream out = new FileOutputStream(manifest)) {
+			out.write(("options\t" + options + "\n").getBytes(StandardCharsets.UTF_8));
+			out.getFD().sync();
+		}
+		return c;
+	}
+
+	/**
+	 * Replays the manifest, or starts a new one if there is none.
+	 *
+	 * @throws IllegalStateException if the manifest was written with other
+	 *                               options or is broken
+	 */
+	static Checkpoint resume(String manifest, String options) throws IOException {
+		if (!new File(manifest).exists()) {
+			return start(manifest, options);
+		}
+
+		Checkpoint c = new Checkpoint(manifest);
+		String[] lines = new String(Files.readAllBytes(Paths.get(manifest)), StandardCharsets.UTF_8).split("\n", -1);
+		if (!lines[0].equals("options\t" + options)) {
+			throw new IllegalStateException("manifest " + manifest + " was written with other options: " + lines[0]);
+		}
+
+		// the last one is either empty or cut by the crash
+		for (int l = 1; l < lines.length - 1; l++) {
+			String[] s = lines[l].split("\t");
+			switch (s[0]) {
+				case "run":
+					c.files.addLast(s[1]);
+					c.lines = Long.parseLong(s[2]);
+					c.runs++;
+					break;
+				case "runs":
+					for (int i = 2; i < s.length; i++) {
+						c.files.addLast(s[i]);
+						c.runs++;
+					}
+					c.lines = Long.parseLong(s[1]);
+					break;
+				case "split":
+					c.split = true;
+					break;
+				case "merge":
+					for (int i = 2; i < s.length; i++) {
+						if (!s[i].equals(c.files.pollFirst())) {
+							throw new IllegalStateException("manifest " + manifest + " merges " + s[i] + " out of order");
+						}
+						removeFile(s[i]); // could be left by the crash
+					}
+					c.files.addLast(s[1]);
+					c.merges++;
+					break;
+				default:
+					throw new IllegalStateException("manifest " + manifest + " has unknown step: " + lines[l]);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Runs and merged files that are done.
+	 */
+	Deque<String> files() {
+		return new ArrayDeque<>(files);
+	}
+
+	long lines() {
+		return lines;
+	}
+
+	int runs() {
+		return runs;
+	}
+
+	int merges() {
+		return merges;
+	}
+
+	boolean split() {
+		return split;
+	}
+
+	void run(String name, long lines) throws IOException {
+		if (manifest != null) {
+			force(name);
+			append("run\t" + name + "\t" + lines);
+		}
+	}
+
+	/**
+	 * Runs whose input lines are known only when all of them are written -
+	 * one line, so a crash either records all of them or none.
+	 */
+	void runs(List<String> names, long lines) throws IOException {
+		if (manifest != null && !names.isEmpty()) {
+			StringBuilder line = new StringBuilder("runs\t").append(lines);
+			for (String name : names) {
+				force(name);
+				line.append('\t').append(name);
+			}
+			append(line.toString());
+		}
+	}
+
+	void splitDone() throws IOException {
+		if (manifest != null) {
+			append("split");
+		}
+	}
+
+	void merge(List<String> names, String newName) throws IOException {
+		if (manifest != null) {
+			force(newName);
+			StringBuilder line = new StringBuilder("merge\t").append(newName);
+			for (String name : names) {
+				line.append('\t').append(name);
+			}
+			append(line.toString());
+		}
+	}
+
+	private static void force(String name) throws IOException {
+		try (FileChannel ch = FileChannel.open(Paths.get(name), StandardOpenOption.WRITE)) {
+			ch.force(true);
+		}
+	}
+
+	private synchronized void append(String line) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(manifest, true)) {
+			out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+			out.getFD().sync();
+		}
+	}
+}
@@ -0,0 +1,455 @@
+package sorts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+
+import static reader.IOUtils.*;
+
+/**
+ * ExternalRecordSort
+ *
+ * Same external sort as ExternalSort, but for whole lines ordered by a key -
+ * a column of a CSV or TSV line, a long, a string, a composite key. The key
+ * is extracted from every line once and its normalized prefix is computed
+ * once, see KeyPrefix. Run buffers keep the prefix in a long[] next to the
+ * lines and the keys, so sorting a run compares longs and only goes to the
+ * comparator on equal prefixes.
+ *
+ * Temp files keep the prefix in front of every record - "prefix line length
+ * bytes" with the line number of the input and the line in UTF-8 - so the
+ * merge compares prefixes without parsing anything, and extracts the key of
+ * a record only when its prefix ties with another one. The result is the
+ * lines in the order of their keys, records with equal keys keep the input
+ * order - the cascade merges runs out of order, so ties are broken by the
+ * line numbers.
+ *
+ * Temp files go to a directory of their own, created for every sort in the
+ * system temp dir or in tempDir, so sorts running next to each other do not
+ * overwrite the runs of one another. The directory is removed at the end.
+ *
+ * ExternalRecordSort<Long> e = ExternalRecordSort.builder("input.csv",
+ * 				column(2, ',').andThen(Long::parseLong), Comparator.<Long>naturalOrder())
+ * 		.prefix(KeyPrefix.ofLong())
+ * 		.memoryBudget(64L << 20)
+ * 		.fanIn(64)
+ * 		.build();
+ */
+public class ExternalRecordSort<K> {
+
+	private static final int DEFAULT_FAN_IN = 64;
+	private static final String RESULT = "result";
+	private static final String TEMP_PREFIX = "records";
+	private static final int MAX_RUN_CAPACITY = Integer.MAX_VALUE - 8;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int RECORD_OVERHEAD = 64; // String, its array, key and prefix
+
+	private final BufferedReader r;
+	private final Function<String, ? extends K> key; // key of a line
+	private final Comparator<? super K> order; // order of the keys
+	private final KeyPrefix<? super K> prefix; // normalized prefix of a key
+	private final boolean exact; // equal prefixes mean equal keys
+	private final int limit; // records per temp file limit
+	private final long memoryBudget; // bytes of records per temp file limit
+	private final int fanIn; // max number of files merged in one pass
+	private final String tempDir; // where the temp directory is created, null - system temp dir
+	private long comparisons; // comparator calls, prefixes did not tell the order
+
+	private ExternalRecordSort(Builder<K> b) throws FileNotFoundException {
+		if (b.fanIn < 2) {
+			throw new IllegalArgumentException("fanIn should be at least 2");
+		}
+		if (b.limit <= 0 && b.memoryBudget <= 0) {
+			throw new IllegalArgumentException("either limit or memoryBudget should be set");
+		}
+
+		key = b.key;
+		order = b.order;
+		prefix = b.prefix;
+		exact = b.prefix.exact();
+		limit = b.limit > 0 ? b.limit : MAX_RUN_CAPACITY;
+		memoryBudget = b.memoryBudget > 0 ? b.memoryBudget : Long.MAX_VALUE;
+		fanIn = b.fanIn;
+		tempDir = b.tempDir;
+		r = createReader(b.fileName);
+	}
+
+	public static <K> Builder<K> builder(String fileName, Function<String, ? extends K> key,
+			Comparator<? super K> order) {
+		return new Builder<>(fileName, key, order);
+	}
+
+	public static class Builder<K> {
+		private final String fileName;
+		private final Function<String, ? extends K> key;
+		private final Comparator<? super K> order;
+		private KeyPrefix<? super K> prefix = KeyPrefix.none();
+		private int limit;
+		private long memoryBudget;
+		private int fanIn = DEFAULT_FAN_IN;
+		private String tempDir;
+
+		private Builder(String fileName, Function<String, ? extends K> key, Comparator<? super K> order) {
+			this.fileName = fileName;
+			this.key = Objects.requireNonNull(key);
+			this.order = Objects.requireNonNull(order);
+		}
+
+		/**
+		 * Normalized prefix of the keys, it has to agree with the order.
+		 */
+		public Builder<K> prefix(KeyPrefix<? super K> prefix) {
+			this.prefix = Objects.requireNonNull(prefix);
+			return this;
+		}
+
+		/**
+		 * Records per temp file.
+		 */
+		public Builder<K> limit(int limit) {
+			this.limit = limit;
+			this.memoryBudget = 0;
+			return this;
+		}
+
+		/**
+		 * Bytes of records per temp file - a line takes 2 bytes per char and
+		 * about 64 bytes more for the objects around it.
+		 */
+		public Builder<K> memoryBudget(long bytes) {
+			this.memoryBudget = bytes;
+			this.limit = 0;
+			return this;
+		}
+
+		/**
+		 * Max number of files merged in one pass, 64 by default.
+		 */
+		public Builder<K> fanIn(int fanIn) {
+			this.fanIn = fanIn;
+			return this;
+		}
+
+		/**
+		 * Directory the temp directory of the sort is created in, the system
+		 * temp dir by default.
+		 */
+		public Builder<K> tempDir(String tempDir) {
+			this.tempDir = tempDir;
+			return this;
+		}
+
+		public ExternalRecordSort<K> build() throws FileNotFoundException {
+			return new ExternalRecordSort<>(this);
+		}
+	}
+
+	/**
+	 * Field of a delimited line, fields are numbered from 0. No regex and no
+	 * array of all the fields, unlike String.split.
+	 */
+	public static Function<String, String> column(int index, char delimiter) {
+		if (index < 0) {
+			throw new IllegalArgumentException("index should not be negative");
+		}
+		return line -> {
+			int from = 0;
+			for (int i = 0; i < index; i++) {
+				from = line.indexOf(delimiter, from) + 1;
+				if (from == 0) {
+					throw new IllegalArgumentException("no column " + index + " in \"" + line + "\"");
+				}
+			}
+			int to = line.indexOf(delimiter, from);
+			return line.substring(from, to < 0 ? line.length() : to);
+		};
+	}
+
+	/**
+	 * @return name of the result file
+	 */
+	public String sort() throws IOException {
+		Path dir = tempDir == null
+				? Files.createTempDirectory(TEMP_PREFIX)
+				: Files.createTempDirectory(Files.createDirectories(Paths.get(tempDir)), TEMP_PREFIX);
+		try {
+			return sortIn(dir);
+		} finally {
+			// what is left after a failure
+			File[] left = dir.toFile().listFiles();
+			if (left != null) {
+				for (File f : left) {
+					removeFile(f.getPath());
+				}
+			}
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	private String sortIn(Path dir) throws IOException {
+		Deque<String> files = splitIntoRuns(dir);
+		if (files.isEmpty()) {
+			createWriter(RESULT).close();
+			return RESULT;
+		}
+
+		int fileCount = 0;
+
+		// a single run is still a temp file
+		boolean rewrite = files.size() == 1;
+
+		while (files.size() > 1 || rewrite) {
+			rewrite = false;
+
+			int width = ExternalSort.nextMergeWidth(files.size(), fanIn);
+			List<String> names = new ArrayList<>(width);
+			for (int i = 0; i < width; i++) {
+				names.add(files.removeFirst());
+			}
+			String newName = files.isEmpty() ? RESULT : dir.resolve(String.valueOf(fileCount++)).toString();
+
+			mergeFiles(names, newName, files.isEmpty());
+
+			for (String name : names) {
+				removeFile(name);
+			}
+			files.addLast(newName);
+		}
+
+		return files.remove();
+	}
+
+	/**
+	 * Comparator calls so far - comparisons the prefixes could not decide.
+	 */
+	public long comparisons() {
+		return comparisons;
+	}
+
+	/**************************************************************************/
+
+	/**
+	 * Reads records into the run buffer until limit or memoryBudget is hit,
+	 * sorts it by prefix and key and writes it out.
+	 */
+	@SuppressWarnings("unchecked")
+	private Deque<String> splitIntoRuns(Path dir) throws IOException {
+		Deque<String> files = new ArrayDeque<>();
+		int cap = 1024;
+		String[] lines = new String[cap];
+		Object[] keys = new Object[cap];
+		long[] prefixes = new long[cap];
+		long lineNumber = 0;
+		String cur = r.readLine();
+
+		while (cur != null) {
+			int size = 0;
+			long bytes = 0;
+			while (cur != null && size != limit && (size == 0 || bytes < memoryBudget)) {
+				if (size == cap) {
+					cap = (int) Math.min(2L * cap, MAX_RUN_CAPACITY);
+					lines = Arrays.copyOf(lines, cap);
+					keys = Arrays.copyOf(keys, cap);
+					prefixes = Arrays.copyOf(prefixes, cap);
+				}
+				K k = key.apply(cur);
+				lines[size] = cur;
+				keys[size] = k;
+				prefixes[size] = prefix.of(k);
+				size++;
+				bytes += RECORD_OVERHEAD + 2L * cur.length();
+				cur = r.readLine();
+			}
+
+			int[] perm = sortedOrder(prefixes, (K[]) keys, size);
+
+			String fileName = dir.resolve(files.size() + "t").toString();
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE))) {
+				for (int i = 0; i < size; i++) {
+					int j = perm[i];
+					writeRecord(out, prefixes[j], lineNumber + j, lines[j]);
+				}
+			}
+			lineNumber += size;
+			Arrays.fill(lines, 0, size, null);
+			Arrays.fill(keys, 0, size, null);
+			files.addLast(fileName);
+		}
+		r.close();
+
+		return files;
+	}
+
+	/**
+	 * Merge sort of the record indices - stable, so equal keys keep the input
+	 * order, and the records themselves are never moved.
+	 */
+	private int[] sortedOrder(long[] prefixes, K[] keys, int n) {
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++) {
+			a[i] = i;
+		}
+		int[] aux = new int[n];
+		for (int width = 1; width < n; width *= 2) {
+			for (int lo = 0; lo < n - width; lo += 2 * width) {
+				int mid = lo + width;
+				int hi = Math.min(lo + 2 * width, n);
+				if (compare(prefixes[a[mid - 1]], keys[a[mid - 1]], prefixes[a[mid]], keys[a[mid]]) <= 0) {
+					continue; // already in order
+				}
+				System.arraycopy(a, lo, aux, lo, hi - lo);
+				int i = lo, j = mid;
+				for (int k = lo; k < hi; k++) {
+					if (i == mid) a[k] = aux[j++];
+					else if (j == hi) a[k] = aux[i++];
+					else if (compare(prefixes[aux[j]], keys[aux[j]], prefixes[aux[i]], keys[aux[i]]) < 0) a[k] = aux[j++];
+					else a[k] = aux[i++];
+				}
+			}
+		}
+		return a;
+	}
+
+	private int compare(long p, K a, long q, K b) {
+		if (p != q) {
+			return p < q ? -1 : 1;
+		}
+		if (exact) {
+			return 0;
+		}
+		comparisons++;
+		return order.compare(a, b);
+	}
+
+	/**************************************************************************/
+
+	/**
+	 * K-way merge - min heap of run readers by prefix, then by key, then by
+	 * line number.
+	 */
+	private void mergeFiles(List<String> names, String newName, boolean result) throws IOException {
+		RecordHeap heap = new RecordHeap(names.size());
+		for (String name : names) {
+			Run run = new Run(name);
+			if (run.next()) {
+				heap.add(run);
+			} else {
+				run.close();
+			}
+		}
+
+		if (result) {
+			try (BufferedWriter w = createWriter(newName)) {
+				while (!heap.isEmpty()) {
+					Run top = heap.peek();
+					w.write(top.line);
+					w.newLine();
+					advance(heap, top);
+				}
+			}
+		} else {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(newName), BUFFER_SIZE))) {
+				while (!heap.isEmpty()) {
+					Run top = heap.peek();
+					writeRecord(out, top.prefix, top.lineNumber, top.line);
+					advance(heap, top);
+				}
+			}
+		}
+	}
+
+	private void advance(RecordHeap heap, Run top) throws IOException {
+		if (top.next()) {
+			heap.sinkTop();
+		} else {
+			top.close();
+			heap.removeTop();
+		}
+	}
+
+	private final class RecordHeap extends MergeHeap<Run> {
+
+		RecordHeap(int cap) {
+			super(cap);
+		}
+
+		@Override
+		boolean less(Run a, Run b) {
+			int c = compare(a.prefix, a.key(), b.prefix, b.key());
+			return c < 0 || c == 0 && a.lineNumber < b.lineNumber;
+		}
+	}
+
+	/**************************************************************************/
+
+	private static void writeRecord(DataOutputStream out, long prefix, long lineNumber, String line)
+			throws IOException {
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		out.writeLong(prefix);
+		out.writeLong(lineNumber);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Sequential reader of a temp file. The key of the current record is
+	 * extracted only if somebody asks for it, and only once.
+	 */
+	private final class Run {
+		private final DataInputStream in;
+		private byte[] bytes = new byte[256];
+		long prefix;
+		long lineNumber; // in the input, breaks ties of equal keys
+		String line;
+		private K key;
+
+		Run(String name) throws FileNotFoundException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(name), BUFFER_SIZE));
+		}
+
+		boolean next() throws IOException {
+			try {
+				prefix = in.readLong();
+			} catch (EOFException e) {
+				return false;
+			}
+			lineNumber = in.readLong();
+			int length = in.readInt();
+			if (bytes.length < length) {
+				bytes = new byte[Math.max(length, 2 * bytes.length)];
+			}
+			in.readFully(bytes, 0, length);
+			line = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			key = null;
+			return true;
+		}
+
+		K key() {
+			if (key == null && !exact) {
+				key = ExternalRecordSort.this.key.apply(line);
+			}
+			return key;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}
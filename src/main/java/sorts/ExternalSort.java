@@ -1,10 +1,26 @@
 package sorts;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 import static reader.IOUtils.*;
 
@@ -13,201 +29,1311 @@ import static reader.IOUtils.*;
  *
  * https://neerc.ifmo.ru/wiki/index.php?title=Алгоритмы_во_внешней_памяти._Базовые_конструкции
  *
- * TODO
- * - replace limit with file sizes limit
+ * Size of the temp files is either given in lines or derived from a memory
+ * budget in bytes - every buffered number takes Integer.BYTES in the run
+ * buffer, so budget / Integer.BYTES numbers are sorted in memory at once no
+ * matter how long the lines are. The run buffer is allocated when the split
+ * phase starts, never bigger than the input can fill, reused for every temp
+ * file and dropped before the merge. The budget is only for the run buffers -
+ * a merge keeps a block per file, and prefetch blocks more with read-ahead.
+ * Input lines are parsed right in the bytes they are read into, see
+ * LineReader, so there is no String per line.
+ *
+ * With threads > 1 run generation becomes a pipeline: this thread reads the
+ * input into one of the free run buffers, a pool of threads sorts the full
+ * buffers, and a single writer thread writes them out in order and gives the
+ * buffers back. Number of buffers in flight bounds both memory and how far the
+ * reader can get ahead, the memory budget is split between them.
+ *
+ * Temp files are TEXT by default, BINARY keeps them as little-endian ints, so
+ * merging does no parsing and formatting at all. Only the result file is
+ * written in the output format, which can be BINARY too.
+ *
+ * Reducer collapses equal numbers on every write of a run and of a merge -
+ * DISTINCT keeps one of them, COUNT and SUM keep one with a weight. The
+ * result then has "number weight" lines. SUM reads "key value" lines, keeps
+ * both in the run buffer packed into a long, and only works with plain
+ * sequential runs.
+ *
+ * With mergeThreads > 1 the last merge is split by key ranges: splitters are
+ * sampled from the runs, every run is binary searched for them, and every
+ * range is merged by its own thread into its own segment. The segments are
+ * concatenated into the result. Binary search needs fixed width records, so
+ * this works only with BINARY uncompressed runs and not with a DELTA result,
+ * otherwise the last merge is the usual one.
+ *
+ * When only a few numbers of the order are needed there is no need to sort -
+ * the static smallest, largest and quantiles read the file once, write
+ * nothing and keep only O(k) numbers in memory, no run buffers.
+ *
+ * Temp files can be compressed - DELTA format stores differences of the sorted
+ * numbers as varints, DEFLATE compression works on the bytes of any format.
+ *
+ * Temp files and the result go through the storage - java.io streams,
+ * FileChannel with direct buffers or memory mapped blocks - in blocks of
+ * blockSize bytes, see RunStorage.
+ *
+ * With replacementSelection runs are produced by a tournament heap instead of
+ * sorting fixed batches: a number that is not smaller than the last written
+ * one still joins the current run. Random input gives runs of about 2 * limit
+ * numbers, sorted input - a single run, so there is nothing to merge. The heap
+ * lives in the run buffer, so memory is the same, but it is single threaded.
+ *
+ * With prefetch > 0 the merge phase reads every run ahead and writes the
+ * merged file behind on background threads, up to prefetch blocks per file,
+ * so comparing numbers overlaps with the disk.
+ *
+ * Temp files go to the working directory, or round robin to tempDirs, which
+ * can be on different disks. With a manifest every written run and every
+ * merge is forced to the disk and recorded in it, see Checkpoint - if the
+ * process dies, resume continues from the last recorded step instead of
+ * from the start. The input has to be the same, the manifest checks only
+ * the options.
+ *
+ * Nothing is printed - phases, runs and merges go to the listener, and the
+ * counters of every phase to metrics. SortListener.console() prints them.
+ *
+ * ExternalSort e = ExternalSort.builder("input.txt")
+ * 		.memoryBudget(64L << 20)
+ * 		.fanIn(64)
+ * 		.threads(4)
+ * 		.build();
  */
 public class ExternalSort {
 
 	private static final String FILE_EXTENSION = ".txt";
-	private static final boolean DEBUGGER_ON = true;
+	private static final String RESULT = "result";
+	private static final int DEFAULT_FAN_IN = 64;
+	private static final int PAIRWISE_FAN_IN = 2; // of the old constructor
+	private static final int MAX_RUN_CAPACITY = Integer.MAX_VALUE - 8;
+	private static final int MIN_BLOCK_SIZE = 64;
+	private static final int DEFAULT_SKETCH_K = 200;
+	private static final int SAMPLES_PER_PART = 64;
 
-	private final BufferedReader r;
-	private final int limit; // lines per temp file limit
+	private final String fileName; // input
+	private final LineReader r;
+	private final int limit; // numbers per temp file limit
+	private final int fanIn; // max number of files merged in one pass
+	private final int threads; // threads sorting the runs
+	private final int inFlight; // run buffers of the split phase
+	private final RunFormat runFormat; // format of the temp files
+	private final RunFormat outputFormat; // format of the result file
+	private final RunCompression compression; // compression of the temp files
+	private final RunStorage storage; // how temp and result files are read and written
+	private final int blockSize; // bytes per block of temp and result files
+	private final int prefetch; // blocks read ahead and written behind per file while merging
+	private final boolean replacementSelection; // runs by tournament heap instead of batches
+	private final Reducer reducer; // what to do with equal numbers
+	private final int mergeThreads; // threads of the last merge
+	private final String[] tempDirs; // where temp files go, round robin
+	private final String manifest; // progress of the sort, null - not recorded
+	private final String options; // what the manifest is checked against
+	private final SortListener listener;
+	private final SortMetrics metrics = new SortMetrics();
+	private int[][] buffers; // run buffers, reused for every temp file, only while splitting
+	private long[] pairs; // run buffer of key-value pairs for Reducer.SUM
+	private ExecutorService io; // read-ahead and write-behind threads of the merge phase
+	private Checkpoint checkpoint = Checkpoint.none();
+	private long consumed; // input lines in the written runs
+	private int runCount; // runs written
+	private int nextDir; // temp dir of the next temp file
+	private long phaseStart; // nanoTime the current phase started at
+	private long inputLines; // input lines read in the current phase
+	private long inputBytes; // and their bytes
 
 	public ExternalSort(String fileName, int limit) throws FileNotFoundException {
-		this.limit = limit;
-		r = createReader(fileName);
+		this(fileName, limit, PAIRWISE_FAN_IN);
+	}
+
+	public ExternalSort(String fileName, int limit, int fanIn) throws FileNotFoundException {
+		this(builder(fileName).limit(limit).fanIn(fanIn));
+	}
+
+	private ExternalSort(Builder b) throws FileNotFoundException {
+		if (b.fanIn < 2) {
+			throw new IllegalArgumentException("fanIn should be at least 2");
+		}
+		if (b.threads < 1) {
+			throw new IllegalArgumentException("threads should be at least 1");
+		}
+		if (b.mergeThreads < 1) {
+			throw new IllegalArgumentException("mergeThreads should be at least 1");
+		}
+		if (b.prefetch < 0) {
+			throw new IllegalArgumentException("prefetch should not be negative");
+		}
+		if (b.blockSize < MIN_BLOCK_SIZE || b.blockSize % Integer.BYTES != 0) {
+			throw new IllegalArgumentException("blockSize should be at least " + MIN_BLOCK_SIZE
+					+ " and a multiple of " + Integer.BYTES);
+		}
+
+		boolean sum = b.reducer == Reducer.SUM;
+		if (sum && (b.threads != 1 || b.replacementSelection)) {
+			throw new IllegalArgumentException("SUM works only with sequential batch runs");
+		}
+
+		// replacement selection is single threaded, its heap gets the whole budget
+		int runBuffers = b.replacementSelection ? 1
+				: b.buffers > 0 ? b.buffers : (b.threads == 1 ? 1 : b.threads + 1);
+		int recordBytes = sum ? Long.BYTES : Integer.BYTES;
+		int runLimit = b.limit;
+		if (b.memoryBudget > 0) {
+			runLimit = (int) Math.min(b.memoryBudget / recordBytes / runBuffers, MAX_RUN_CAPACITY);
+		}
+		if (runLimit <= 0) {
+			throw new IllegalArgumentException("either limit or memoryBudget of at least "
+					+ (long) recordBytes * runBuffers + " bytes should be set");
+		}
+
+		limit = runLimit;
+		fanIn = b.fanIn;
+		threads = b.threads;
+		inFlight = runBuffers;
+		runFormat = b.runFormat;
+		outputFormat = b.outputFormat;
+		compression = b.compression;
+		storage = b.storage;
+		blockSize = b.blockSize;
+		prefetch = b.prefetch;
+		replacementSelection = b.replacementSelection;
+		reducer = b.reducer;
+		mergeThreads = b.mergeThreads;
+		tempDirs = b.tempDirs;
+		manifest = b.manifest;
+		listener = b.listener;
+		options = b.fileName + " " + fanIn + " " + runFormat + " " + outputFormat + " " + compression + " " + reducer;
+		for (String dir : tempDirs) {
+			new File(dir).mkdirs();
+		}
+		fileName = b.fileName;
+		r = new LineReader(b.fileName);
+	}
+
+	public static Builder builder(String fileName) {
+		return new Builder(fileName);
+	}
+
+	public static class Builder {
+		private final String fileName;
+		private int limit;
+		private long memoryBudget;
+		private int fanIn = DEFAULT_FAN_IN;
+		private int threads = 1;
+		private int buffers;
+		private RunFormat runFormat = RunFormat.TEXT;
+		private RunFormat outputFormat = RunFormat.TEXT;
+		private RunCompression compression = RunCompression.NONE;
+		private RunStorage storage = RunStorage.STREAM;
+		private int blockSize = RunStorage.DEFAULT_BLOCK_SIZE;
+		private int prefetch;
+		private boolean replacementSelection;
+		private Reducer reducer = Reducer.NONE;
+		private int mergeThreads = 1;
+		private String[] tempDirs = new String[0];
+		private String manifest;
+		private SortListener listener = SortListener.NONE;
+
+		private Builder(String fileName) {
+			this.fileName = fileName;
+		}
+
+		/**
+		 * Numbers per temp file.
+		 */
+		public Builder limit(int limit) {
+			this.limit = limit;
+			this.memoryBudget = 0;
+			return this;
+		}
+
+		/**
+		 * Bytes for all run buffers, temp file size is derived from it. The
+		 * blocks of the merge phase are not counted, see blockSize.
+		 */
+		public Builder memoryBudget(long bytes) {
+			this.memoryBudget = bytes;
+			this.limit = 0;
+			return this;
+		}
+
+		/**
+		 * Max number of files merged in one pass, 64 by default - a merge
+		 * keeps a block of every file in memory.
+		 */
+		public Builder fanIn(int fanIn) {
+			this.fanIn = fanIn;
+			return this;
+		}
+
+		/**
+		 * Threads sorting the runs, 1 means no pipeline.
+		 */
+		public Builder threads(int threads) {
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * Run buffers in flight, threads + 1 by default.
+		 */
+		public Builder buffers(int buffers) {
+			this.buffers = buffers;
+			return this;
+		}
+
+		/**
+		 * Format of the temp files.
+		 */
+		public Builder runFormat(RunFormat runFormat) {
+			this.runFormat = runFormat;
+			return this;
+		}
+
+		/**
+		 * Format of the result file.
+		 */
+		public Builder outputFormat(RunFormat outputFormat) {
+			this.outputFormat = outputFormat;
+			return this;
+		}
+
+		/**
+		 * Compression of the temp files.
+		 */
+		public Builder compression(RunCompression compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		public Builder storage(RunStorage storage) {
+			this.storage = storage;
+			return this;
+		}
+
+		/**
+		 * Bytes per block of temp and result files, 64KB by default. A merge
+		 * keeps a block of every file in memory, with prefetch blocks more,
+		 * on top of memoryBudget.
+		 */
+		public Builder blockSize(int blockSize) {
+			this.blockSize = blockSize;
+			return this;
+		}
+
+		/**
+		 * Blocks read ahead and written behind per file while merging, 0 - off.
+		 * 1 is double buffering.
+		 */
+		public Builder prefetch(int prefetch) {
+			this.prefetch = prefetch;
+			return this;
+		}
+
+		/**
+		 * Produce runs with replacement selection, threads and buffers are
+		 * not used then - the heap is a single buffer of the whole budget.
+		 */
+		public Builder replacementSelection(boolean replacementSelection) {
+			this.replacementSelection = replacementSelection;
+			return this;
+		}
+
+		public Builder reducer(Reducer reducer) {
+			this.reducer = reducer;
+			return this;
+		}
+
+		/**
+		 * Threads of the last merge, more than 1 needs BINARY uncompressed runs.
+		 */
+		public Builder mergeThreads(int mergeThreads) {
+			this.mergeThreads = mergeThreads;
+			return this;
+		}
+
+		/**
+		 * Directories for the temp files, they are used round robin. The
+		 * result is written to the working directory.
+		 */
+		public Builder tempDirs(String... tempDirs) {
+			this.tempDirs = tempDirs.clone();
+			return this;
+		}
+
+		/**
+		 * File to record the progress in, so that the sort can be resumed.
+		 */
+		public Builder manifest(String manifest) {
+			this.manifest = manifest;
+			return this;
+		}
+
+		public Builder listener(SortListener listener) {
+			this.listener = Objects.requireNonNull(listener);
+			return this;
+		}
+
+		public ExternalSort build() throws FileNotFoundException {
+			return new ExternalSort(this);
+		}
 	}
 
 	/**
 	 * @return name of the result file
 	 */
 	public String sort() throws IOException {
+		if (manifest != null) {
+			checkpoint = Checkpoint.start(manifest, options);
+		}
+		return sortFrom();
+	}
 
-		writeStatus("=== START ===");
-
-		// split into temp files - O(N)
-		// produces lines/limit + (lines%limit==0?0:1) files
-		int tempFileCount = splitIntoTempFiles();
+	/**
+	 * Continues the sort recorded in the manifest from the last recorded
+	 * step, with the same input and options. Without the manifest file it is
+	 * the same as sort, after the end it only returns the result.
+	 *
+	 * @return name of the result file
+	 * @throws IllegalStateException if the manifest was written with other
+	 *                               options
+	 */
+	public String resume() throws IOException {
+		if (manifest == null) {
+			throw new IllegalStateException("resume needs a manifest");
+		}
+		checkpoint = Checkpoint.resume(manifest, options);
+		listener.resumed(checkpoint.runs(), checkpoint.merges());
+		return sortFrom();
+	}
 
-		// sort every temp file in mem - quick sort or insertion sort
-		// we sort it in memory because this is why we doin splitting in the first place
-		Deque<String> files = sortFiles(tempFileCount);
+	private String sortFrom() throws IOException {
+		Deque<String> files = splitIntoRuns();
+		if (files.isEmpty()) {
+			// empty input, no runs to merge
+			createRun(RESULT, true).close();
+			return RESULT;
+		}
 
-		// merge every 2 files into new one, remove old 2
+		// merge every fanIn files into new one, remove old ones
 		// do that until there is 1 file left
 		mergeSortedFiles(files);
 
-		writeStatus("=== END ===");
-
 		return files.remove();
 	}
 
-	/**************************************************************************/
+	/**
+	 * Counters of this sort, they grow as it goes.
+	 */
+	public SortMetrics metrics() {
+		return metrics;
+	}
 
-	private int splitIntoTempFiles() throws IOException {
+	/**
+	 * Same as sort, but the last merge is not written anywhere - the numbers
+	 * come straight out of it as the iterator goes, so there is no result file
+	 * to write and read again. The temp files are removed when the iterator is
+	 * over or closed.
+	 */
+	public SortedIterator iterator() throws IOException {
+		Deque<String> files = splitIntoRuns();
+
+		startPhase(SortMetrics.Phase.MERGE);
+		startIo();
+		try {
+			// merge until what is left fits into one merge
+			mergeAll(files, fanIn);
+			return new SortedIterator(new ArrayList<>(files));
+		} catch (IOException | RuntimeException e) {
+			stopIo();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sorted numbers as a lazy stream over iterator, closing the stream
+	 * removes the temp files.
+	 */
+	public IntStream stream() throws IOException {
+		SortedIterator it = iterator();
+		Spliterator.OfInt split = Spliterators.spliteratorUnknownSize(it,
+				Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+		return StreamSupport.intStream(split, false).onClose(it::close);
+	}
+
+	/**
+	 * @return k smallest numbers of the file, smallest first
+	 */
+	public static int[] smallest(String fileName, int k) throws IOException {
+		return select(fileName, k, false);
+	}
 
-		writeStatus("[SPLITTING] start");
+	/**
+	 * @return k largest numbers of the file, largest first
+	 */
+	public static int[] largest(String fileName, int k) throws IOException {
+		return select(fileName, k, true);
+	}
 
-		int fileCount = 0;
-		String cur = r.readLine();
+	/**
+	 * One pass with a bounded heap - O(N log k) time and O(k) memory. The
+	 * heap is a min heap of the k largest seen so far, a number gets in only
+	 * if it beats the top. For the smallest ones we keep ~x instead of x - it
+	 * reverses the order of ints without overflow, so the same min heap works.
+	 */
+	private static int[] select(String fileName, int k, boolean largest) throws IOException {
+		if (k < 0) {
+			throw new IllegalArgumentException("k should not be negative");
+		}
 
-		while (cur != null) {
-			writeStatus("creating " + fileCount + "t");
-			BufferedWriter w = createWriter(fileCount + "t");
-			int batchSize = 0;
-			while (cur != null && batchSize != limit) {
-				w.write(cur);
-				w.newLine();
-				cur = r.readLine();
-				batchSize++;
+		int[] heap = new int[k];
+		int size = 0;
+		try (LineReader r = new LineReader(fileName)) {
+			while (r.next()) {
+				int x = r.intValue();
+				int key = largest ? x : ~x;
+				if (size < k) {
+					heap[size++] = key;
+					if (size == k) heapify(heap, k);
+				} else if (k > 0 && key > heap[0]) {
+					heap[0] = key;
+					sink(heap, 0, k);
+				}
 			}
-			w.close();
-			fileCount++;
 		}
 
-		writeStatus("[SPLITTING] end");
+		Arrays.sort(heap, 0, size);
+		int[] ans = new int[size];
+		for (int i = 0; i < size; i++) {
+			int key = heap[size - 1 - i];
+			ans[i] = largest ? key : ~key;
+		}
+		return ans;
+	}
 
-		return fileCount;
+	/**
+	 * @return approximate quantiles of the file, one for each of qs, with
+	 * about 1% rank error
+	 */
+	public static int[] quantiles(String fileName, double... qs) throws IOException {
+		QuantileSketch sketch = sketch(fileName, DEFAULT_SKETCH_K);
+		int[] ans = new int[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			ans[i] = sketch.quantile(qs[i]);
+		}
+		return ans;
 	}
 
-	private Deque<String> sortFiles(int tempFileCount) throws IOException {
+	/**
+	 * Reads the whole file into a quantile sketch in one pass.
+	 */
+	public static QuantileSketch sketch(String fileName, int k) throws IOException {
+		QuantileSketch sketch = new QuantileSketch(k);
+		try (LineReader r = new LineReader(fileName)) {
+			while (r.next()) {
+				sketch.add(r.intValue());
+			}
+		}
+		return sketch;
+	}
 
-		writeStatus("[SORTING] start");
+	private Deque<String> splitIntoRuns() throws IOException {
+		// split into sorted temp files - O(N log limit)
+		// every batch is parsed into the run buffer, sorted there and written once
+		// produces lines/limit + (lines%limit==0?0:1) files
+		// or about lines/(2*limit) files with replacement selection
+		Deque<String> files = checkpoint.files();
+		runCount = checkpoint.runs();
+		consumed = checkpoint.lines();
+		if (checkpoint.split()) {
+			r.close();
+			return files;
+		}
+
+		startPhase(SortMetrics.Phase.SPLIT);
+
+		// lines of the recorded runs
+		for (long i = 0; i < consumed; i++) {
+			nextLine();
+		}
+
+		allocateBuffers();
+		try {
+			if (reducer == Reducer.SUM) {
+				files.addAll(generateRunsWithValues());
+			} else if (replacementSelection) {
+				files.addAll(generateRunsBySelection());
+			} else {
+				files.addAll(threads == 1 ? generateRuns() : generateRunsParallel());
+			}
+		} finally {
+			// the merge does not need them
+			buffers = null;
+			pairs = null;
+		}
+		checkpoint.splitDone();
+
+		endPhase(SortMetrics.Phase.SPLIT);
+
+		return files;
+	}
+
+	/**
+	 * Run buffers of limit numbers, or less for a small input - every line
+	 * but the last one ends with a line break, so there are at most
+	 * length + 1 lines.
+	 */
+	private void allocateBuffers() {
+		int capacity = (int) Math.min(limit, new File(fileName).length() + 1);
+		if (reducer == Reducer.SUM) {
+			pairs = new long[capacity];
+		} else {
+			buffers = new int[inFlight][capacity];
+		}
+	}
+
+	/**
+	 * Name of the next run, in the next temp dir.
+	 */
+	private String nextRunName() {
+		return tempFile(runCount++ + "t");
+	}
+
+	private String tempFile(String name) {
+		if (tempDirs.length == 0) {
+			return name;
+		}
+		return new File(tempDirs[nextDir++ % tempDirs.length], name).getPath();
+	}
+
+	/**************************************************************************/
+
+	/**
+	 * Parse the input straight into the run buffer, sort it in memory and
+	 * write the temp file already sorted - one write per run and no reading
+	 * the unsorted temp files back.
+	 */
+	private Deque<String> generateRuns() throws IOException {
+
+		Deque<String> files = new ArrayDeque<>();
+		int[] buffer = buffers[0];
+		boolean more = nextLine();
+
+		while (more) {
+			int size = 0;
+			while (more && size != limit) {
+				buffer[size++] = getInt();
+				more = nextLine();
+			}
+
+			Arrays.sort(buffer, 0, size);
+
+			String fileName = nextRunName();
+			writeRun(fileName, buffer, size);
+			checkpoint.run(fileName, consumed += size);
+			files.addLast(fileName);
+		}
+		r.close();
+
+		return files;
+	}
+
+	/**
+	 * Same as generateRuns for "key value" lines. Key goes to the high half of
+	 * a long and value to the low one, so sorting the longs sorts by key.
+	 */
+	private Deque<String> generateRunsWithValues() throws IOException {
 
 		Deque<String> files = new ArrayDeque<>();
+		boolean more = nextLine();
 
-		for (int i = 0; i < tempFileCount; i++) {
+		while (more) {
+			int size = 0;
+			while (more && size != limit) {
+				pairs[size++] = (long) getInt() << 32 | (getValue() & 0xffffffffL);
+				more = nextLine();
+			}
+
+			Arrays.sort(pairs, 0, size);
 
-			String fileName = i + "t";
+			String fileName = nextRunName();
+			RunWriter wr = createRun(fileName, false);
+			for (int i = 0; i < size; i++) {
+				wr.write((int) (pairs[i] >> 32), (int) pairs[i]);
+			}
+			wr.close();
+			runWritten(fileName, size);
+			checkpoint.run(fileName, consumed += size);
 			files.addLast(fileName);
+		}
+		r.close();
+
+		return files;
+	}
+
+	/**
+	 * Same as generateRuns, but only reading happens on this thread. A full
+	 * buffer goes to the sorting pool, and the writer waits for it to be sorted,
+	 * writes it and returns it to the free buffers. The writer is a single
+	 * thread, so the runs are written in the order they were read.
+	 *
+	 * After a failed run nothing more is written or recorded - the manifest
+	 * must not get runs after a missing one - and the reader stops.
+	 */
+	private Deque<String> generateRunsParallel() throws IOException {
 
-			// get data
-			List<String> data = readFile(fileName);
+		Deque<String> files = new ArrayDeque<>();
+		BlockingQueue<int[]> free = new ArrayBlockingQueue<>(buffers.length);
+		Collections.addAll(free, buffers);
+
+		ExecutorService sorters = Executors.newFixedThreadPool(threads);
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		List<Future<?>> written = new ArrayList<>();
+		AtomicBoolean failed = new AtomicBoolean();
+
+		try {
+			boolean more = nextLine();
+
+			while (more && !failed.get()) {
+				int[] buffer = free.take();
+				int size = 0;
+				while (more && size != limit) {
+					buffer[size++] = getInt();
+					more = nextLine();
+				}
+
+				int runSize = size;
+				long runEnd = consumed += size;
+				String fileName = nextRunName();
+				files.addLast(fileName);
 
-			// file array
-			int[] ar = new int[data.size()];
-			int k = 0;
-			for (String d : data) {
-				ar[k++] = getInt(d);
+				Future<?> sorted = sorters.submit(() -> Arrays.sort(buffer, 0, runSize));
+				written.add(writer.submit(() -> {
+					try {
+						if (failed.get()) {
+							return null;
+						}
+						sorted.get();
+						writeRun(fileName, buffer, runSize);
+						checkpoint.run(fileName, runEnd);
+					} catch (Throwable e) {
+						failed.set(true);
+						throw e;
+					} finally {
+						free.add(buffer);
+					}
+					return null;
+				}));
+			}
+
+			for (Future<?> f : written) {
+				f.get();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while generating runs");
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} finally {
+			sorters.shutdownNow();
+			writer.shutdownNow();
+			r.close();
+		}
+
+		return files;
+	}
+
+	/**
+	 * Replacement selection.
+	 *
+	 * The buffer is split in two: [0, heapSize) is a min heap of the current
+	 * run, [heapSize, size) are the numbers that came too late for it - smaller
+	 * than what we have already written - they wait for the next run. On every
+	 * step we write the top and put the next input number in its place, either
+	 * into the heap or, if it is too small, into the waiting part, which makes
+	 * the heap one smaller. Empty heap means the run is over, the waiting
+	 * numbers become the heap of the next one.
+	 */
+	private Deque<String> generateRunsBySelection() throws IOException {
+
+		Deque<String> files = new ArrayDeque<>();
+		int[] heap = buffers[0];
+		int size = 0;
+		long lines = 0;
+		boolean more = nextLine();
+		while (more && size != limit) {
+			heap[size++] = getInt();
+			lines++;
+			more = nextLine();
+		}
+
+		while (size > 0) {
+			int heapSize = size;
+			heapify(heap, heapSize);
+
+			String fileName = nextRunName();
+			RunWriter wr = createRun(fileName, false);
+			files.addLast(fileName);
+			long records = 0;
 
-			// sort array
-			Arrays.sort(ar);
+			while (heapSize > 0) {
+				int top = heap[0];
+				wr.write(top);
+				records++;
 
-			// write
-			for (int j = 0; j < ar.length; j++) {
-				data.set(j, String.valueOf(ar[j]));
+				if (more) {
+					int next = getInt();
+					lines++;
+					more = nextLine();
+					if (next >= top) {
+						heap[0] = next;
+					} else {
+						heap[0] = heap[--heapSize];
+						heap[heapSize] = next;
+					}
+				} else {
+					// input is over, the heap shrinks and so does the waiting part
+					heap[0] = heap[--heapSize];
+					heap[heapSize] = heap[--size];
+				}
+				sink(heap, 0, heapSize);
 			}
-			writeFile(fileName, data);
 
-			writeStatus("sorted " + fileName);
+			wr.close();
+			runWritten(fileName, records);
 		}
+		r.close();
 
-		writeStatus("[SORTING] end");
+		// a run needs the numbers of the next one to end, so runs are only
+		// recorded when all of them are written, and all at once - a run
+		// recorded with the lines of all of them would make resume skip the
+		// input of the others
+		consumed += lines;
+		checkpoint.runs(new ArrayList<>(files), consumed);
 
 		return files;
 	}
 
+	private static void heapify(int[] a, int n) {
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			sink(a, i, n);
+		}
+	}
+
+	private static void sink(int[] a, int i, int n) {
+		while (2 * i + 1 < n) {
+			int j = 2 * i + 1;
+			if (j + 1 < n && a[j + 1] < a[j]) j++;
+			if (a[i] <= a[j]) break;
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+			i = j;
+		}
+	}
+
 	private void mergeSortedFiles(Deque<String> files) throws IOException {
+		startPhase(SortMetrics.Phase.MERGE);
+		startIo();
+		try {
+			mergeAll(files, 1);
+		} finally {
+			stopIo();
+		}
+		endPhase(SortMetrics.Phase.MERGE);
+	}
 
-		writeStatus("[MERGING] start");
+	private void startIo() {
+		if (prefetch > 0) {
+			io = Executors.newCachedThreadPool(task -> {
+				Thread t = new Thread(task, "external-sort-io");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
 
-		int fileCount = 0;
+	private void stopIo() {
+		if (io != null) {
+			io.shutdown();
+			io = null;
+		}
+	}
 
-		while (files.size() > 1) {
+	/**
+	 * Merges until there are at most left files, with left = 1 the last
+	 * merge produces the result.
+	 */
+	private void mergeAll(Deque<String> files, int left) throws IOException {
 
-			writeStatus("files left: " + files.size());
+		int fileCount = checkpoint.merges();
 
-			String name1 = files.removeFirst();
-			String name2 = files.removeFirst();
-			String newName = files.size() == 0 ? "result" : String.valueOf(fileCount++);
+		// a single run is still in the temp files format and compressed
+		boolean rewrite = left == 1 && files.size() == 1 && !files.peek().equals(RESULT)
+				&& (runFormat != outputFormat || compression != RunCompression.NONE);
 
-			writeStatus("creating " + newName);
-			BufferedWriter mw = createWriter(newName);
-			BufferedReader r1 = createReader(name1);
-			BufferedReader r2 = createReader(name2);
+		while (files.size() > left || rewrite) {
+			rewrite = false;
 
-			String s1 = r1.readLine();
-			String s2 = r2.readLine();
+			int width = nextMergeWidth(files.size(), fanIn);
+			List<String> names = new ArrayList<>(width);
+			for (int i = 0; i < width; i++) {
+				names.add(files.removeFirst());
+			}
+			boolean last = left == 1 && files.size() == 0;
+			String newName = last ? RESULT : tempFile(String.valueOf(fileCount++));
 
-			// merging part
-			while (s1 != null || s2 != null) {
-				if (s1 == null) {
-					mw.write(s2);
-					s2 = r2.readLine();
-				} else if (s2 == null) {
-					mw.write(s1);
-					s1 = r1.readLine();
-				} else {
-					int num1 = getInt(s1);
-					int num2 = getInt(s2);
-					if (num1 < num2) {
-						mw.write(s1);
-						s1 = r1.readLine();
+			listener.mergeStarted(names, newName);
+			long bytes = 0;
+			for (String name : names) {
+				bytes += new File(name).length();
+			}
+
+			long records = last && canPartition()
+					? mergeFilesPartitioned(names, newName)
+					: mergeFiles(names, newName, last);
+
+			metrics.merge(width);
+			metrics.read(SortMetrics.Phase.MERGE, records, bytes);
+			metrics.written(SortMetrics.Phase.MERGE, records, new File(newName).length());
+			checkpoint.merge(names, newName);
+
+			for (String name : names) {
+				removeFile(name);
+			}
+
+			files.addLast(newName);
+		}
+
+		// a single run already in the result format is only moved, it may be
+		// in a temp dir, where the next sort would overwrite it
+		if (left == 1 && files.size() == 1 && !files.peek().equals(RESULT)) {
+			String name = files.removeFirst();
+			if (new File(name).exists()) { // or it was moved before a crash
+				Files.move(Paths.get(name), Paths.get(RESULT), StandardCopyOption.REPLACE_EXISTING);
+			}
+			checkpoint.merge(Collections.singletonList(name), RESULT);
+			files.addLast(RESULT);
+		}
+	}
+
+	/**
+	 * Cascade plan for the merge phase.
+	 *
+	 * Every merge of k files reduces the number of files by k - 1. If we always
+	 * took fanIn files, the last merge would get whatever is left, and the big
+	 * files would be rewritten one more time than needed. Instead the first
+	 * merge takes just enough files so that (files - 1) becomes divisible by
+	 * (fanIn - 1) - the same thing as adding dummy empty runs in polyphase
+	 * merge. After that every merge is a full fanIn-way merge and the last one
+	 * produces the result.
+	 *
+	 * So N runs are done in ceil(log_fanIn(N)) passes, and with fanIn >= N in
+	 * one pass.
+	 */
+	static int nextMergeWidth(int files, int fanIn) {
+		if (files <= fanIn) {
+			return files;
+		}
+		return (files - 2) % (fanIn - 1) + 2;
+	}
+
+	/**
+	 * K-way merge - min heap of run readers, on every step we write the top
+	 * reader's number, advance it and sink it back - O(N log k).
+	 */
+	private long mergeFiles(List<String> names, String newName, boolean result) throws IOException {
+		return merge(openRuns(names), createRun(newName, result));
+	}
+
+	/**
+	 * @return records merged
+	 */
+	private long merge(RunHeap heap, RunWriter mw) throws IOException {
+		long records = 0;
+		while (!heap.isEmpty()) {
+			RunReader top = heap.peek();
+			mw.write(top.value(), top.weight());
+			records++;
+			if (top.next()) {
+				heap.sinkTop();
+			} else {
+				top.close();
+				heap.removeTop();
+			}
+		}
+
+		mw.close();
+		metrics.compares(heap.compares);
+		return records;
+	}
+
+	private boolean canPartition() {
+		return mergeThreads > 1 && runFormat == RunFormat.BINARY
+				&& compression == RunCompression.NONE && outputFormat != RunFormat.DELTA;
+	}
+
+	/**
+	 * Partitioned last merge.
+	 *
+	 * Splitters cut the keys into mergeThreads ranges [s(p-1), s(p)) with
+	 * about the same number of records - they are picked from a sorted sample
+	 * of all runs, every run gives samples in proportion to its size. In every
+	 * run each range is a contiguous slice found by binary search, so range p
+	 * is a k-way merge of the slices p of all runs, independent of the other
+	 * ranges. Equal keys always fall into the same range, so reducers work as
+	 * usual. Segments are written in the output format and concatenated.
+	 */
+	private long mergeFilesPartitioned(List<String> names, String newName) throws IOException {
+		int width = reducer.weighted() ? Integer.BYTES + Long.BYTES : Integer.BYTES;
+		int k = names.size();
+		int parts = mergeThreads;
+
+		// bounds[r][p] - first record of range p in run r
+		long[][] bounds = new long[k][parts + 1];
+		FileChannel[] runs = new FileChannel[k];
+		try {
+			long total = 0;
+			for (int r = 0; r < k; r++) {
+				runs[r] = new RandomAccessFile(names.get(r), "r").getChannel();
+				bounds[r][parts] = runs[r].size() / width;
+				total += bounds[r][parts];
+			}
+
+			int[] splitters = sampleSplitters(runs, bounds, total, parts, width);
+			for (int r = 0; r < k; r++) {
+				for (int p = 1; p < parts; p++) {
+					bounds[r][p] = lowerBound(runs[r], bounds[r][parts], splitters[p - 1], width);
+				}
+			}
+		} finally {
+			for (FileChannel ch : runs) {
+				if (ch != null) ch.close();
+			}
+		}
+
+		ExecutorService mergers = Executors.newFixedThreadPool(parts);
+		List<Future<Long>> merged = new ArrayList<>(parts);
+		long records = 0;
+		try {
+			for (int p = 0; p < parts; p++) {
+				int part = p;
+				merged.add(mergers.submit(() -> mergeSlices(names, bounds, part, width, newName + "." + part)));
+			}
+			for (Future<Long> f : merged) {
+				records += f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while merging");
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} finally {
+			mergers.shutdownNow();
+		}
+
+		try (FileChannel out = new FileOutputStream(newName).getChannel()) {
+			for (int p = 0; p < parts; p++) {
+				String segment = newName + "." + p;
+				try (FileChannel in = new FileInputStream(segment).getChannel()) {
+					long size = in.size();
+					for (long pos = 0; pos < size; ) {
+						pos += in.transferTo(pos, size - pos, out);
+					}
+				}
+				removeFile(segment);
+			}
+		}
+		return records;
+	}
+
+	private int[] sampleSplitters(FileChannel[] runs, long[][] bounds, long total, int parts, int width)
+			throws IOException {
+		int[] sample = new int[parts * SAMPLES_PER_PART + runs.length];
+		int size = 0;
+		for (int r = 0; r < runs.length; r++) {
+			long records = bounds[r][parts];
+			if (records == 0) continue;
+			int samples = (int) Math.max(1, (long) parts * SAMPLES_PER_PART * records / Math.max(1, total));
+			samples = Math.min(samples, sample.length - size);
+			for (int i = 0; i < samples; i++) {
+				sample[size++] = readKey(runs[r], (i * 2 + 1) * records / (samples * 2), width);
+			}
+		}
+		Arrays.sort(sample, 0, size);
+
+		int[] splitters = new int[parts - 1];
+		for (int p = 1; p < parts; p++) {
+			splitters[p - 1] = size == 0 ? 0 : sample[(int) ((long) p * size / parts)];
+		}
+		return splitters;
+	}
+
+	/**
+	 * @return index of the first record with key >= x
+	 */
+	private static long lowerBound(FileChannel run, long records, int x, int width) throws IOException {
+		long lo = 0;
+		long hi = records;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (readKey(run, mid, width) < x) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static int readKey(FileChannel run, long index, int width) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		long pos = index * width;
+		while (b.hasRemaining()) {
+			int read = run.read(b, pos + b.position());
+			if (read < 0) {
+				throw new EOFException("run ends before record " + index);
+			}
+		}
+		b.flip();
+		return b.getInt();
+	}
+
+	/**
+	 * K-way merge of slices part of every run into segment.
+	 */
+	private long mergeSlices(List<String> names, long[][] bounds, int part, int width, String segment)
+			throws IOException {
+		RunWriter mw = createRun(segment, true);
+		RunHeap heap = new RunHeap(names.size());
+		for (int r = 0; r < names.size(); r++) {
+			RunReader c = openRun(names.get(r), bounds[r][part] * width, bounds[r][part + 1] * width);
+			if (c.next()) {
+				heap.add(c);
+			} else {
+				c.close();
+			}
+		}
+
+		return merge(heap, mw);
+	}
+
+	private RunHeap openRuns(List<String> names) throws IOException {
+		RunHeap heap = new RunHeap(names.size());
+		for (String name : names) {
+			RunReader c = openRun(name);
+			if (c.next()) {
+				heap.add(c);
+			} else {
+				c.close();
+			}
+		}
+		return heap;
+	}
+
+	/**
+	 * Last merge of iterator. It is a k-way merge too, only the top number
+	 * goes to the caller instead of a file. With a reducer equal numbers come
+	 * once, and weight is their count or sum. IO errors come out as
+	 * UncheckedIOException.
+	 */
+	public final class SortedIterator implements PrimitiveIterator.OfInt, Closeable {
+		private final List<String> names;
+		private final long bytes; // of the files of the merge
+		private RunHeap heap;
+		private long weight;
+		private long records;
+
+		private SortedIterator(List<String> names) throws IOException {
+			this.names = names;
+			listener.mergeStarted(names, null);
+			long bytes = 0;
+			for (String name : names) {
+				bytes += new File(name).length();
+			}
+			this.bytes = bytes;
+			heap = openRuns(names);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (heap != null && heap.isEmpty()) {
+				close();
+			}
+			return heap != null;
+		}
+
+		@Override
+		public int nextInt() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int value = heap.peek().value();
+			weight = 0;
+			try {
+				do {
+					RunReader top = heap.peek();
+					weight += top.weight();
+					records++;
+					if (top.next()) {
+						heap.sinkTop();
 					} else {
-						mw.write(s2);
-						s2 = r2.readLine();
+						top.close();
+						heap.removeTop();
 					}
+				} while (reducer != Reducer.NONE && !heap.isEmpty() && heap.peek().value() == value);
+			} catch (IOException e) {
+				close();
+				throw new UncheckedIOException(e);
+			}
+			return value;
+		}
+
+		/**
+		 * Weight of the number nextInt returned last, 1 without a reducer.
+		 */
+		public long weight() {
+			return reducer.weighted() ? weight : 1;
+		}
+
+		/**
+		 * Closes what is still open and removes the temp files.
+		 */
+		@Override
+		public void close() {
+			if (heap == null) {
+				return;
+			}
+			metrics.compares(heap.compares);
+			IOException error = null;
+			while (!heap.isEmpty()) {
+				try {
+					heap.peek().close();
+				} catch (IOException e) {
+					error = e;
 				}
-				if (s1 != null || s2 != null) mw.newLine();
+				heap.removeTop();
+			}
+			heap = null;
+			for (String name : names) {
+				removeFile(name);
 			}
+			stopIo();
 
-			r1.close();
-			writeStatus("removing " + name1);
-			removeFile(name1);
+			metrics.merge(names.size());
+			metrics.read(SortMetrics.Phase.MERGE, records, bytes);
+			endPhase(SortMetrics.Phase.MERGE);
 
-			r2.close();
-			writeStatus("removing " + name2);
-			removeFile(name2);
+			if (error != null) {
+				throw new UncheckedIOException(error);
+			}
+		}
+	}
 
-			files.addLast(newName);
-			mw.close();
+	/**
+	 * Merge heap of readers by their current value, counts the compares.
+	 */
+	private static final class RunHeap extends MergeHeap<RunReader> {
+		private long compares;
+
+		RunHeap(int cap) {
+			super(cap);
 		}
 
-		writeStatus("[MERGING] end");
+		@Override
+		boolean less(RunReader a, RunReader b) {
+			compares++;
+			return a.value() < b.value();
+		}
 	}
 
 	/**************************************************************************/
 
-	private void writeStatus(String msg) {
-		if (DEBUGGER_ON) {
-			System.out.println(msg);
+	private static IOException unwrap(ExecutionException e) {
+		Throwable cause = e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+		if (cause instanceof IOException) return (IOException) cause;
+		return new IOException(cause);
+	}
+
+	private void startPhase(SortMetrics.Phase phase) {
+		phaseStart = System.nanoTime();
+		listener.phaseStarted(phase);
+	}
+
+	private void endPhase(SortMetrics.Phase phase) {
+		metrics.read(phase, inputLines, inputBytes);
+		inputLines = 0;
+		inputBytes = 0;
+		metrics.time(phase, System.nanoTime() - phaseStart);
+		listener.phaseFinished(phase, metrics);
+	}
+
+	/**
+	 * Moves to the next line of the input, counted for the metrics.
+	 *
+	 * @return false if the input is over
+	 */
+	private boolean nextLine() throws IOException {
+		if (!r.next()) {
+			return false;
 		}
+		inputLines++;
+		inputBytes += r.length();
+		return true;
+	}
+
+	private void runWritten(String name, long records) {
+		metrics.run();
+		metrics.written(SortMetrics.Phase.SPLIT, records, new File(name).length());
+		listener.runCreated(name, records);
 	}
 
-	private int getInt(String s) {
-		return Integer.parseInt(s);
+	private RunReader openRun(String name) throws IOException {
+		return openRun(name, 0, Long.MAX_VALUE);
 	}
 
-	private List<String> readFile(String name) throws IOException {
-		List<String> ans = new ArrayList<>();
-		BufferedReader re = createReader(name);
-		String line = re.readLine();
-		while (line != null) {
-			ans.add(line);
-			line = re.readLine();
+	/**
+	 * Reads only bytes [from, to) of the run.
+	 */
+	private RunReader openRun(String name, long from, long to) throws IOException {
+		BlockInput in = compression.wrap(storage.openInput(name, blockSize, from, to), blockSize);
+		if (io != null) {
+			in = new PrefetchInput(in, io, prefetch, blockSize);
 		}
-		return ans;
+		return runFormat.reader(in, reducer.weighted());
+	}
+
+	/**
+	 * @param result true for the result file, it is not compressed and has its
+	 *               own format
+	 */
+	private RunWriter createRun(String name, boolean result) throws IOException {
+		BlockOutput out = storage.openOutput(name, blockSize);
+		if (!result) {
+			out = compression.wrap(out, blockSize);
+		}
+		if (io != null) {
+			out = new WriteBehindOutput(out, io, prefetch, blockSize);
+		}
+		return reducer.wrap((result ? outputFormat : runFormat).writer(out, reducer.weighted()));
+	}
+
+	/**
+	 * Number of the current line, key of it for SUM.
+	 */
+	private int getInt() {
+		return reducer == Reducer.SUM ? r.intField(0) : r.intValue();
+	}
+
+	private int getValue() {
+		return r.intField(1);
 	}
 
-	private void writeFile(String name, List<String> data) throws IOException {
-		writeStatus("creating " + name);
-		BufferedWriter wr = createWriter(name);
-		for (String s : data) {
-			wr.write(s);
-			wr.newLine();
+	private void writeRun(String name, int[] buffer, int size) throws IOException {
+		RunWriter wr = createRun(name, false);
+		for (int i = 0; i < size; i++) {
+			wr.write(buffer[i]);
 		}
 		wr.close();
+		runWritten(name, size);
 	}
 }
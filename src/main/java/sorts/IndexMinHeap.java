@@ -0,0 +1,191 @@
+package sorts;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Min priority queue of ids 0..n-1 with long keys, where the key of an id in
+ * the queue can be decreased - what Dijkstra and Prim need. Every id is in
+ * the queue at most once, so it never has more than n entries, and nothing
+ * is allocated after the constructor.
+ *
+ * d-ary heap of ids like IntHeap, plus pos - where every id is in the heap,
+ * so decreaseKey finds it in O(1) and swims it up in O(log_d n).
+ *
+ * https://algs4.cs.princeton.edu/24pq/IndexMinPQ.java.html
+ */
+public final class IndexMinHeap {
+
+	private final int d; // children per node
+	private final int[] heap; // ids in heap order
+	private final int[] pos; // position of an id in heap, -1 if it is not there
+	private final long[] keys; // key of an id
+	private int n;
+
+	public IndexMinHeap(int capacity) {
+		this(capacity, IntHeap.DEFAULT_ARITY);
+	}
+
+	/**
+	 * @param capacity ids are 0..capacity-1
+	 */
+	public IndexMinHeap(int capacity, int arity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity should not be negative");
+		}
+		if (arity < 2) {
+			throw new IllegalArgumentException("arity should be at least 2");
+		}
+		this.d = arity;
+		this.heap = new int[capacity];
+		this.pos = new int[capacity];
+		this.keys = new long[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public boolean isEmpty() {
+		return n == 0;
+	}
+
+	public boolean contains(int id) {
+		return pos[id] >= 0;
+	}
+
+	/**
+	 * @throws NoSuchElementException if id is not in the queue
+	 */
+	public long keyOf(int id) {
+		checkContains(id);
+		return keys[id];
+	}
+
+	/**
+	 * @throws IllegalArgumentException if id is already in the queue
+	 */
+	public void insert(int id, long key) {
+		if (contains(id)) {
+			throw new IllegalArgumentException("id " + id + " is already in the queue");
+		}
+		keys[id] = key;
+		heap[n] = id;
+		pos[id] = n;
+		swim(n++);
+	}
+
+	/**
+	 * @throws NoSuchElementException   if id is not in the queue
+	 * @throws IllegalArgumentException if key is bigger than the current one
+	 */
+	public void decreaseKey(int id, long key) {
+		checkContains(id);
+		if (key > keys[id]) {
+			throw new IllegalArgumentException("key " + key + " is bigger than " + keys[id] + " of id " + id);
+		}
+		keys[id] = key;
+		swim(pos[id]);
+	}
+
+	/**
+	 * Inserts id, or decreases its key if it is in the queue with a bigger
+	 * one - relaxing an edge in one call.
+	 *
+	 * @return false if id is in the queue with a key that is not bigger
+	 */
+	public boolean insertOrDecrease(int id, long key) {
+		if (!contains(id)) {
+			insert(id, key);
+			return true;
+		}
+		if (key >= keys[id]) {
+			return false;
+		}
+		keys[id] = key;
+		swim(pos[id]);
+		return true;
+	}
+
+	/**
+	 * @throws NoSuchElementException if the queue is empty
+	 */
+	public int peekMin() {
+		if (n == 0) {
+			throw new NoSuchElementException("queue is empty");
+		}
+		return heap[0];
+	}
+
+	/**
+	 * @throws NoSuchElementException if the queue is empty
+	 */
+	public long minKey() {
+		return keys[peekMin()];
+	}
+
+	/**
+	 * @return id with the smallest key, its key stays in keyOf until the id
+	 * is inserted again
+	 * @throws NoSuchElementException if the queue is empty
+	 */
+	public int pollMin() {
+		int min = peekMin();
+		pos[min] = -1;
+		if (--n > 0) {
+			heap[0] = heap[n];
+			pos[heap[0]] = 0;
+			sink(0);
+		}
+		return min;
+	}
+
+	public void clear() {
+		for (int i = 0; i < n; i++) {
+			pos[heap[i]] = -1;
+		}
+		n = 0;
+	}
+
+	private void checkContains(int id) {
+		if (!contains(id)) {
+			throw new NoSuchElementException("id " + id + " is not in the queue");
+		}
+	}
+
+	private void swim(int i) {
+		int id = heap[i];
+		long key = keys[id];
+		while (i > 0) {
+			int parent = (i - 1) / d;
+			if (keys[heap[parent]] <= key) break;
+			move(heap[parent], i);
+			i = parent;
+		}
+		move(id, i);
+	}
+
+	private void sink(int i) {
+		int id = heap[i];
+		long key = keys[id];
+		while (true) {
+			int first = d * i + 1;
+			if (first >= n) break;
+			int last = Math.min(first + d, n);
+			int j = first;
+			for (int c = first + 1; c < last; c++) {
+				if (keys[heap[c]] < keys[heap[j]]) j = c;
+			}
+			if (key <= keys[heap[j]]) break;
+			move(heap[j], i);
+			i = j;
+		}
+		move(id, i);
+	}
+
+	private void move(int id, int i) {
+		heap[i] = id;
+		pos[id] = i;
+	}
+}
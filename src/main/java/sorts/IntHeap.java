@@ -0,0 +1,211 @@
+package sorts;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ * Priority queue of ints in a plain int[] - no boxing, nothing is allocated
+ * except when the array grows.
+ *
+ * d-ary heap, 4 children per node by default: the tree is half as deep as a
+ * binary one, so add does half the moves, and the children of a node sit
+ * next to each other in memory, so poll looks at 4 of them in one cache line.
+ * Root is at index 0, children of i are d * i + 1 .. d * i + d.
+ *
+ * The heap itself is always a min heap. A max heap keeps ~x instead of x -
+ * it reverses the order of ints without overflow - so there is no branch on
+ * the order in the comparisons.
+ */
+public final class IntHeap {
+
+	public static final int DEFAULT_ARITY = 4;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final int d; // children per node
+	private final boolean max;
+	private int[] q;
+	private int n;
+
+	public IntHeap(boolean max) {
+		this(max, DEFAULT_ARITY, DEFAULT_CAPACITY);
+	}
+
+	public IntHeap(boolean max, int arity, int capacity) {
+		if (arity < 2) {
+			throw new IllegalArgumentException("arity should be at least 2");
+		}
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity should not be negative");
+		}
+		this.d = arity;
+		this.max = max;
+		this.q = new int[Math.max(capacity, 1)];
+	}
+
+	public static IntHeap minHeap() {
+		return new IntHeap(false);
+	}
+
+	public static IntHeap maxHeap() {
+		return new IntHeap(true);
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public boolean isEmpty() {
+		return n == 0;
+	}
+
+	public void clear() {
+		n = 0;
+	}
+
+	/**
+	 * Adding to the end and then swimming - O(log_d n).
+	 */
+	public void add(int x) {
+		if (n == q.length) {
+			q = Arrays.copyOf(q, 2 * q.length);
+		}
+		q[n] = key(x);
+		swim(n++);
+	}
+
+	/**
+	 * Adds a[from, to). Into an empty or a small heap the keys are put as
+	 * they are and the heap is built bottom up - O(n) instead of O(n log n).
+	 */
+	public void addAll(int[] a, int from, int to) {
+		int k = to - from;
+		if (n + k > q.length) {
+			q = Arrays.copyOf(q, Math.max(n + k, 2 * q.length));
+		}
+		if (k < n) {
+			for (int i = from; i < to; i++) {
+				q[n] = key(a[i]);
+				swim(n++);
+			}
+			return;
+		}
+		for (int i = from; i < to; i++) {
+			q[n++] = key(a[i]);
+		}
+		for (int i = (n - 2) / d; i >= 0; i--) {
+			sink(i);
+		}
+	}
+
+	/**
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public int peek() {
+		if (n == 0) {
+			throw new NoSuchElementException("heap is empty");
+		}
+		return key(q[0]);
+	}
+
+	/**
+	 * Moving the last to the top and sinking it - O(d log_d n).
+	 *
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public int poll() {
+		if (n == 0) {
+			throw new NoSuchElementException("heap is empty");
+		}
+		int top = q[0];
+		q[0] = q[--n];
+		sink(0);
+		return key(top);
+	}
+
+	/**
+	 * Same as poll and then add, but with one sink.
+	 *
+	 * @return the old top
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public int replaceTop(int x) {
+		if (n == 0) {
+			throw new NoSuchElementException("heap is empty");
+		}
+		int top = q[0];
+		q[0] = key(x);
+		sink(0);
+		return key(top);
+	}
+
+	/**
+	 * Polls up to count numbers into dst from index off, in order.
+	 *
+	 * @return how many were polled
+	 */
+	public int pollInto(int[] dst, int off, int count) {
+		int k = Math.min(count, n);
+		for (int i = 0; i < k; i++) {
+			dst[off + i] = poll();
+		}
+		return k;
+	}
+
+	/**
+	 * Polls everything into action, in order.
+	 */
+	public void drain(IntConsumer action) {
+		while (n > 0) {
+			action.accept(poll());
+		}
+	}
+
+	/**
+	 * ~x both ways for a max heap.
+	 */
+	private int key(int x) {
+		return max ? ~x : x;
+	}
+
+	private void swim(int i) {
+		int x = q[i];
+		while (i > 0) {
+			int parent = (i - 1) / d;
+			if (q[parent] <= x) break;
+			q[i] = q[parent];
+			i = parent;
+		}
+		q[i] = x;
+	}
+
+	/**
+	 * Smallest of the up to d children goes up while it is smaller, the
+	 * sinking key is written once at the end.
+	 */
+	private void sink(int i) {
+		int x = q[i];
+		while (true) {
+			int first = d * i + 1;
+			if (first >= n) break;
+			int last = Math.min(first + d, n);
+			int j = first;
+			for (int c = first + 1; c < last; c++) {
+				if (q[c] < q[j]) j = c;
+			}
+			if (x <= q[j]) break;
+			q[i] = q[j];
+			i = j;
+		}
+		q[i] = x;
+	}
+
+	@Override
+	public String toString() {
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = key(q[i]);
+		}
+		return "IntHeap{" + (max ? "max" : "min") + ", d=" + d + ", q=" + Arrays.toString(keys) + '}';
+	}
+}
@@ -0,0 +1,86 @@
+package sorts;
+
+/**
+ * Normalized key prefix for ExternalRecordSort - a long that orders records
+ * the same way as the comparator does, as far as it can tell them apart:
+ * if of(a) < of(b) then a comes before b. Equal prefixes tell nothing and
+ * the comparator decides, unless the prefix is exact, that is the whole key.
+ *
+ * So most comparisons of the sort are comparisons of two longs, and the
+ * records and keys are only looked at when their prefixes are equal.
+ */
+@FunctionalInterface
+public interface KeyPrefix<K> {
+
+	long of(K key);
+
+	/**
+	 * Whether equal prefixes mean equal keys, then the comparator is never
+	 * called.
+	 */
+	default boolean exact() {
+		return false;
+	}
+
+	/**
+	 * Prefix for the reversed order.
+	 */
+	default KeyPrefix<K> reversed() {
+		KeyPrefix<K> p = this;
+		return new KeyPrefix<K>() {
+			@Override
+			public long of(K key) {
+				return ~p.of(key);
+			}
+
+			@Override
+			public boolean exact() {
+				return p.exact();
+			}
+		};
+	}
+
+	/**
+	 * No prefix, every comparison goes to the comparator.
+	 */
+	static <K> KeyPrefix<K> none() {
+		return key -> 0;
+	}
+
+	static KeyPrefix<Integer> ofInt() {
+		return exact(key -> key);
+	}
+
+	static KeyPrefix<Long> ofLong() {
+		return exact(key -> key);
+	}
+
+	/**
+	 * First 4 chars of the string, 16 bits each, for the natural order of
+	 * strings. Shorter strings are padded with zeros, which is why it is not
+	 * exact - "ab" and "ab\0" have the same prefix.
+	 */
+	static KeyPrefix<String> ofString() {
+		return key -> {
+			long p = 0;
+			for (int i = 0; i < 4; i++) {
+				p = p << 16 | (i < key.length() ? key.charAt(i) : 0);
+			}
+			return p ^ Long.MIN_VALUE; // unsigned to signed order
+		};
+	}
+
+	static <K> KeyPrefix<K> exact(KeyPrefix<K> p) {
+		return new KeyPrefix<K>() {
+			@Override
+			public long of(K key) {
+				return p.of(key);
+			}
+
+			@Override
+			public boolean exact() {
+				return true;
+			}
+		};
+	}
+}
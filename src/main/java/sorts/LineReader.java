@@ -0,0 +1,126 @@
+package sorts;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the input line by line into a byte buffer of its own, numbers of the
+ * current line are parsed right there with AsciiCodec - BufferedReader would
+ * make a char[] and a String of every line.
+ *
+ * A line is valid until the next call of next. Lines end with "\n" or
+ * "\r\n", a line longer than the buffer makes the buffer grow.
+ */
+final class LineReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final InputStream in;
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int pos; // start of what is not read yet
+	private int limit; // end of the bytes in buf
+	private int start; // current line is [start, end)
+	private int end;
+	private int length; // bytes of the current line with its line break
+	private boolean eof;
+
+	LineReader(String fileName) throws FileNotFoundException {
+		this.in = new FileInputStream(fileName);
+	}
+
+	/**
+	 * @return false if there are no lines left
+	 */
+	boolean next() throws IOException {
+		int i = pos;
+		while (true) {
+			while (i < limit && buf[i] != '\n') {
+				i++;
+			}
+			if (i < limit || eof) {
+				break;
+			}
+			i -= fill();
+		}
+		if (i == pos && i == limit) {
+			return false; // eof, no last line without a break
+		}
+		start = pos;
+		end = i;
+		pos = i < limit ? i + 1 : i;
+		length = pos - start;
+		if (end > start && buf[end - 1] == '\r') {
+			end--;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the rest to the start of the buffer, grows it if the rest fills
+	 * it, and reads more.
+	 *
+	 * @return how far the rest moved back
+	 */
+	private int fill() throws IOException {
+		int shift = pos;
+		System.arraycopy(buf, pos, buf, 0, limit - pos);
+		limit -= pos;
+		pos = 0;
+		if (limit == buf.length) {
+			byte[] bigger = new byte[2 * buf.length];
+			System.arraycopy(buf, 0, bigger, 0, limit);
+			buf = bigger;
+		}
+		int n = in.read(buf, limit, buf.length - limit);
+		if (n < 0) {
+			eof = true;
+		} else {
+			limit += n;
+		}
+		return shift;
+	}
+
+	/**
+	 * Bytes of the current line, line break included.
+	 */
+	int length() {
+		return length;
+	}
+
+	/**
+	 * The whole line as an int.
+	 */
+	int intValue() {
+		return AsciiCodec.parseInt(buf, start, end);
+	}
+
+	/**
+	 * Field of a line of fields separated by single spaces, from 0.
+	 */
+	int intField(int field) {
+		int from = start;
+		for (int f = 0; f < field; f++) {
+			from = indexOfSpace(from) + 1;
+			if (from == 0) {
+				throw new NumberFormatException("no field " + field + " in the line");
+			}
+		}
+		int to = indexOfSpace(from);
+		return AsciiCodec.parseInt(buf, from, to < 0 ? end : to);
+	}
+
+	private int indexOfSpace(int from) {
+		for (int i = from; i < end; i++) {
+			if (buf[i] == ' ') return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
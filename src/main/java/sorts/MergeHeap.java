@@ -0,0 +1,70 @@
+package sorts;
+
+/**
+ * Min heap of the run readers of a k-way merge by their current record,
+ * root is at index 0. The merge only needs to replace the top after
+ * advancing it, so instead of poll + add we sink the top in place - one
+ * log k walk per record.
+ *
+ * Shared by ExternalSort and ExternalRecordSort, the order of the readers is
+ * given by less.
+ */
+abstract class MergeHeap<T> {
+	private final Object[] q;
+	private int n;
+
+	MergeHeap(int cap) {
+		q = new Object[cap];
+	}
+
+	/**
+	 * @return true if the current record of a is before the one of b
+	 */
+	abstract boolean less(T a, T b);
+
+	final boolean isEmpty() {
+		return n == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	final T peek() {
+		return (T) q[0];
+	}
+
+	final void add(T c) {
+		int i = n++;
+		q[i] = c;
+		while (i > 0 && less(at(i), at((i - 1) / 2))) {
+			exch(i, (i - 1) / 2);
+			i = (i - 1) / 2;
+		}
+	}
+
+	final void removeTop() {
+		q[0] = q[--n];
+		q[n] = null;
+		sinkTop();
+	}
+
+	final void sinkTop() {
+		int i = 0;
+		while (2 * i + 1 < n) {
+			int j = 2 * i + 1;
+			if (j + 1 < n && less(at(j + 1), at(j))) j++;
+			if (!less(at(j), at(i))) break;
+			exch(i, j);
+			i = j;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T at(int i) {
+		return (T) q[i];
+	}
+
+	private void exch(int i, int j) {
+		Object t = q[i];
+		q[i] = q[j];
+		q[j] = t;
+	}
+}
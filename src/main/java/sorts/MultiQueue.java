@@ -0,0 +1,190 @@
+package sorts;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Relaxed priority queue of longs for many threads - c * T LongHeaps, every
+ * one behind a lock of its own, instead of one heap behind one lock that
+ * all threads wait for.
+ *
+ * add puts the key into a random heap. poll looks at the tops of two random
+ * heaps and takes the better one, so it is not always the best key of the
+ * whole queue, but one of the best few: with c * T heaps a polled key is
+ * O(c * T) ranks away from the best on average. A heap that is locked by
+ * another thread is not waited for, another random one is taken - but only
+ * a few times, then add waits for the last one it took and poll for the
+ * heaps in turn, so a thread does not spin on the locks forever.
+ *
+ * Tops of the heaps are kept outside of the locks so that poll compares
+ * them without locking - in key order, as the heaps keep them, one per 64
+ * bytes so that the threads updating them do not share cache lines.
+ *
+ * https://arxiv.org/abs/1411.1209
+ */
+public final class MultiQueue {
+
+	public static final int DEFAULT_QUEUES_PER_THREAD = 2;
+	private static final int STRIDE = 8; // longs per cache line
+	private static final long NONE = Long.MAX_VALUE; // top of an empty heap
+	private static final int ATTEMPTS = 64; // random tries before poll scans all heaps
+	private static final int ADD_ATTEMPTS = 4; // locked heaps tried before add waits for one
+
+	private final boolean max;
+	private final LongHeap[] heaps;
+	private final ReentrantLock[] locks;
+	private final AtomicLongArray tops;
+	private final LongAdder size = new LongAdder();
+
+	/**
+	 * DEFAULT_QUEUES_PER_THREAD heaps for every available processor.
+	 */
+	public MultiQueue(boolean max) {
+		this(max, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUES_PER_THREAD);
+	}
+
+	/**
+	 * @param threads         threads expected to use the queue
+	 * @param queuesPerThread c, 2 or more keeps threads off each other's locks
+	 */
+	public MultiQueue(boolean max, int threads, int queuesPerThread) {
+		if (threads < 1 || queuesPerThread < 1) {
+			throw new IllegalArgumentException("threads and queuesPerThread should be at least 1");
+		}
+		int k = threads * queuesPerThread;
+		this.max = max;
+		this.heaps = new LongHeap[k];
+		this.locks = new ReentrantLock[k];
+		this.tops = new AtomicLongArray(k * STRIDE);
+		for (int i = 0; i < k; i++) {
+			heaps[i] = new LongHeap(max);
+			locks[i] = new ReentrantLock();
+			tops.set(i * STRIDE, NONE);
+		}
+	}
+
+	public static MultiQueue minQueue() {
+		return new MultiQueue(false);
+	}
+
+	public static MultiQueue maxQueue() {
+		return new MultiQueue(true);
+	}
+
+	/**
+	 * Count of keys, exact only when no thread changes the queue.
+	 */
+	public int size() {
+		return (int) Math.min(size.sum(), Integer.MAX_VALUE);
+	}
+
+	public boolean isEmpty() {
+		return size.sum() == 0;
+	}
+
+	/**
+	 * Into a random heap that is not locked. After ADD_ATTEMPTS locked ones
+	 * waits for the lock of the last one.
+	 */
+	public void add(long x) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int i = random.nextInt(heaps.length);
+		boolean locked = locks[i].tryLock();
+		for (int attempt = 1; !locked && attempt < ADD_ATTEMPTS; attempt++) {
+			i = random.nextInt(heaps.length);
+			locked = locks[i].tryLock();
+		}
+		ReentrantLock lock = locks[i];
+		if (!locked) {
+			lock.lock();
+		}
+		try {
+			LongHeap heap = heaps[i];
+			heap.add(x);
+			updateTop(i, heap);
+		} finally {
+			lock.unlock();
+		}
+		size.increment();
+	}
+
+	/**
+	 * Better top of two random heaps. After ATTEMPTS tries that found only
+	 * empty or locked heaps all heaps are locked and looked at in turn, so
+	 * the queue is empty for real when this throws.
+	 *
+	 * @throws NoSuchElementException if the queue is empty
+	 */
+	public long poll() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+			int i = random.nextInt(heaps.length);
+			int j = random.nextInt(heaps.length);
+			long ti = tops.get(i * STRIDE);
+			long tj = tops.get(j * STRIDE);
+			if (tj < ti) {
+				i = j;
+				ti = tj;
+			}
+			if (ti == NONE) continue;
+			ReentrantLock lock = locks[i];
+			if (!lock.tryLock()) continue;
+			try {
+				LongHeap heap = heaps[i];
+				if (heap.isEmpty()) continue;
+				return pollFrom(i, heap);
+			} finally {
+				lock.unlock();
+			}
+		}
+		return pollAny(random.nextInt(heaps.length));
+	}
+
+	/**
+	 * Polls the first heap that is not empty, starting at from.
+	 */
+	private long pollAny(int from) {
+		for (int k = 0; k < heaps.length; k++) {
+			int i = (from + k) % heaps.length;
+			ReentrantLock lock = locks[i];
+			lock.lock();
+			try {
+				LongHeap heap = heaps[i];
+				if (!heap.isEmpty()) {
+					return pollFrom(i, heap);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		throw new NoSuchElementException("queue is empty");
+	}
+
+	/**
+	 * Under the lock of heap i.
+	 */
+	private long pollFrom(int i, LongHeap heap) {
+		long x = heap.poll();
+		updateTop(i, heap);
+		size.decrement();
+		return x;
+	}
+
+	/**
+	 * Under the lock of heap i. A top equal to NONE makes the heap look
+	 * empty to poll, it is still found by pollAny.
+	 */
+	private void updateTop(int i, LongHeap heap) {
+		tops.set(i * STRIDE, heap.isEmpty() ? NONE : key(heap.peek()));
+	}
+
+	/**
+	 * Same as the heaps: ~x for a max queue, so that smaller is better.
+	 */
+	private long key(long x) {
+		return max ? ~x : x;
+	}
+}
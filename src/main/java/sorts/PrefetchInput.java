@@ -0,0 +1,118 @@
+package sorts;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Read-ahead over a BlockInput. Blocks are read on the io executor into
+ * depth + 1 own buffers while the caller works on the current one, so the
+ * caller only waits for the disk if it is faster than the disk.
+ *
+ * At most one read task per input is in flight, it reads while there are
+ * free buffers and then stops. Returning a buffer schedules it again.
+ */
+final class PrefetchInput implements BlockInput {
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final BlockInput in;
+	private final Executor io;
+	private final BlockingQueue<ByteBuffer> free;
+	private final BlockingQueue<ByteBuffer> ready;
+	private ByteBuffer current;
+	private boolean reading; // guarded by this
+	private volatile boolean over;
+	private volatile IOException error;
+
+	PrefetchInput(BlockInput in, Executor io, int depth, int blockSize) {
+		this.in = in;
+		this.io = io;
+		free = new ArrayBlockingQueue<>(depth + 1);
+		ready = new ArrayBlockingQueue<>(depth + 2);
+		for (int i = 0; i <= depth; i++) {
+			free.add(ByteBuffer.allocate(blockSize));
+		}
+		schedule();
+	}
+
+	@Override
+	public ByteBuffer next() throws IOException {
+		if (current != null) {
+			free.add(current);
+			current = null;
+			schedule();
+		}
+
+		ByteBuffer b;
+		try {
+			b = ready.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a block");
+		}
+		if (b == END) {
+			// keep answering null on the next calls
+			ready.add(END);
+			if (error != null) {
+				throw error;
+			}
+			return null;
+		}
+		current = b;
+		return b;
+	}
+
+	private synchronized void schedule() {
+		if (!reading && !over && !free.isEmpty()) {
+			reading = true;
+			io.execute(this::fill);
+		}
+	}
+
+	private void fill() {
+		ByteBuffer b;
+		while (!over && (b = free.poll()) != null) {
+			ByteBuffer block;
+			try {
+				block = in.next();
+			} catch (IOException e) {
+				error = e;
+				block = null;
+			}
+			if (block == null) {
+				over = true;
+				ready.add(END);
+				break;
+			}
+			b.clear();
+			b.put(block);
+			b.flip();
+			ready.add(b);
+		}
+		synchronized (this) {
+			reading = false;
+			notifyAll();
+		}
+		// the caller might have returned a buffer while we were finishing
+		schedule();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			over = true;
+			while (reading) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted while waiting for the reads");
+				}
+			}
+		}
+		in.close();
+	}
+}
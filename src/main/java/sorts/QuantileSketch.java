@@ -0,0 +1,151 @@
+package sorts;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * QuantileSketch
+ *
+ * KLL sketch - https://arxiv.org/abs/1603.05346
+ *
+ * Approximate quantiles of a stream of ints in O(k log(n/k)) memory. Numbers
+ * are kept in levels, a number on level h stands for 2^h numbers of the
+ * input. When the sketch is over its capacity, the lowest full level is
+ * sorted and every second number of it (starting at a random one) goes up a
+ * level, the rest are dropped. Upper levels get capacity k, every level below
+ * 2/3 of the one above it, so most of the space goes to the top where the
+ * weights are.
+ *
+ * Rank error is about 1.7 / k, k = 200 gives about 1%. Two sketches can be
+ * merged, so a large input can be sketched in parts.
+ */
+public class QuantileSketch {
+	private static final double SHRINK = 2.0 / 3;
+	private static final int MIN_LEVEL_CAPACITY = 2;
+
+	private final int k;
+	private final SplittableRandom random;
+	private int[][] levels = new int[1][];
+	private int[] sizes = new int[1];
+	private long n;
+
+	public QuantileSketch(int k) {
+		this(k, new SplittableRandom());
+	}
+
+	public QuantileSketch(int k, SplittableRandom random) {
+		if (k < MIN_LEVEL_CAPACITY) {
+			throw new IllegalArgumentException("k should be at least " + MIN_LEVEL_CAPACITY);
+		}
+		this.k = k;
+		this.random = random;
+		levels[0] = new int[k];
+	}
+
+	public void add(int x) {
+		n++;
+		append(0, x);
+		if (sizes[0] >= capacity(0)) {
+			compress();
+		}
+	}
+
+	/**
+	 * Adds other's numbers to this sketch, other is not changed.
+	 */
+	public void merge(QuantileSketch other) {
+		n += other.n;
+		for (int h = 0; h < other.sizes.length; h++) {
+			for (int i = 0; i < other.sizes[h]; i++) {
+				append(h, other.levels[h][i]);
+			}
+		}
+		compress();
+	}
+
+	/**
+	 * @return number x such that about q * n input numbers are <= x
+	 */
+	public int quantile(double q) {
+		if (n == 0) {
+			throw new IllegalStateException("sketch is empty");
+		}
+		if (q < 0 || q > 1) {
+			throw new IllegalArgumentException("q should be in [0, 1]");
+		}
+
+		// every kept number with its weight, sorted by number
+		int size = 0;
+		for (int s : sizes) size += s;
+		long[] weighted = new long[size];
+		int j = 0;
+		for (int h = 0; h < sizes.length; h++) {
+			for (int i = 0; i < sizes[h]; i++) {
+				// number in the high half, level in the low one
+				weighted[j++] = (long) levels[h][i] << 32 | h;
+			}
+		}
+		Arrays.sort(weighted);
+
+		long total = 0;
+		for (int h = 0; h < sizes.length; h++) total += (long) sizes[h] << h;
+		long target = (long) Math.ceil(q * total);
+		long seen = 0;
+		for (long w : weighted) {
+			seen += 1L << (int) w;
+			if (seen >= target) {
+				return (int) (w >> 32);
+			}
+		}
+		return (int) (weighted[size - 1] >> 32);
+	}
+
+	/**
+	 * Numbers added so far.
+	 */
+	public long count() {
+		return n;
+	}
+
+	/**************************************************************************/
+
+	private int capacity(int h) {
+		int depth = sizes.length - 1 - h;
+		return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(SHRINK, depth)));
+	}
+
+	private void append(int h, int x) {
+		if (h >= levels.length) {
+			levels = Arrays.copyOf(levels, h + 1);
+			sizes = Arrays.copyOf(sizes, h + 1);
+			levels[h] = new int[k];
+		}
+		if (sizes[h] == levels[h].length) {
+			levels[h] = Arrays.copyOf(levels[h], 2 * levels[h].length);
+		}
+		levels[h][sizes[h]++] = x;
+	}
+
+	/**
+	 * Compacts levels from the bottom while they are over their capacity.
+	 */
+	private void compress() {
+		for (int h = 0; h < sizes.length; h++) {
+			if (sizes[h] < capacity(h)) {
+				continue;
+			}
+			int[] level = levels[h];
+			int size = sizes[h];
+			Arrays.sort(level, 0, size);
+
+			// with an odd size the smallest one stays, every pair of the rest
+			// sends one of its numbers up, the same one for all pairs
+			int keep = size % 2;
+			int offset = random.nextInt(2);
+			for (int i = keep + offset; i < size; i += 2) {
+				append(h + 1, level[i]);
+			}
+			sizes[h] = keep;
+		}
+	}
+}
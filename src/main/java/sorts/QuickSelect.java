@@ -0,0 +1,316 @@
+package sorts;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static sorts.QuickThreeWaySort.INSERTION_SORT_CUTOFF;
+import static sorts.QuickThreeWaySort.depthLimit;
+import static sorts.QuickThreeWaySort.exch;
+import static sorts.QuickThreeWaySort.gt;
+import static sorts.QuickThreeWaySort.insertionSort;
+import static sorts.QuickThreeWaySort.lt;
+import static sorts.QuickThreeWaySort.partition;
+import static sorts.QuickThreeWaySort.pivot;
+
+/**
+ * k-th smallest key of an int[] or a long[] in O(N), in place - the k-th
+ * element, the median, a percentile or the k smallest keys without a full
+ * sort.
+ *
+ * Introselect: partitioning is the same 3-way one with a ninther pivot as in
+ * QuickThreeWaySort, but only the part that holds k is partitioned further,
+ * and it stops as soon as k falls among the keys equal to the pivot - so many
+ * duplicates end it early. After 2 log N levels the pivot is the median of
+ * medians of groups of 5 instead, which always drops at least 3/10 of the
+ * range, so the worst case is O(N) too, not O(N^2).
+ *
+ * After select(a, k) a[k] is the key it would have in the sorted array, keys
+ * before it are not bigger and keys after it are not smaller.
+ *
+ * parallelSelect partitions big ranges with all threads - every chunk counts
+ * its keys less than, equal to and greater than the pivot, then copies them
+ * to their places in a buffer, and the range is copied back - and finishes
+ * small ranges as select does.
+ *
+ * https://en.wikipedia.org/wiki/Median_of_medians
+ */
+public class QuickSelect {
+
+	private static final int GROUP = 5;
+	private static final int MIN_CHUNK = 1 << 16;
+
+	/* int[] */
+
+	/**
+	 * @return a[k] after the selection
+	 */
+	public static int select(int[] a, int k) {
+		return select(a, 0, a.length, k);
+	}
+
+	/**
+	 * Selects in a[from, to), k is an index of a, from <= k < to.
+	 */
+	public static int select(int[] a, int from, int to, int k) {
+		checkIndex(from, to, k);
+		select(a, from, to - 1, k, depthLimit(to - from));
+		return a[k];
+	}
+
+	/**
+	 * The k smallest keys go to a[0, k) in order, the rest are left in any
+	 * order after them - O(N + k log k).
+	 */
+	public static void partialSort(int[] a, int k) {
+		checkCount(a.length, k);
+		if (k == 0) return;
+		if (k < a.length) {
+			select(a, 0, a.length - 1, k - 1, depthLimit(a.length));
+			k--; // the selected one is in place already
+		}
+		QuickThreeWaySort.Iterative.sort(a, 0, k - 1, depthLimit(k));
+	}
+
+	public static int parallelSelect(int[] a, int k) {
+		return parallelSelect(a, k, ForkJoinPool.commonPool());
+	}
+
+	public static int parallelSelect(int[] a, int k, ForkJoinPool pool) {
+		checkIndex(0, a.length, k);
+		int lo = 0, hi = a.length; // k is in a[lo, hi)
+		int[] buf = null;
+		for (int depth = depthLimit(a.length); depth > 0; depth--) {
+			int n = hi - lo;
+			int chunks = Math.min(pool.getParallelism(), n / MIN_CHUNK);
+			if (chunks < 2) break;
+			if (buf == null) buf = new int[a.length];
+
+			int from = lo;
+			int[] b = buf;
+			int v = a[pivot(a, lo, hi - 1)];
+			int[] bounds = RadixSort.bounds(n, chunks);
+			int[][] count = new int[chunks][3]; // less, equal, greater
+			RadixSort.run(pool, chunks, c -> {
+				int[] cnt = count[c];
+				for (int i = from + bounds[c]; i < from + bounds[c + 1]; i++) {
+					cnt[a[i] < v ? 0 : a[i] == v ? 1 : 2]++;
+				}
+			});
+			int less = offsets(count, from);
+			RadixSort.run(pool, chunks, c -> {
+				int[] offset = count[c];
+				for (int i = from + bounds[c]; i < from + bounds[c + 1]; i++) {
+					int x = a[i];
+					b[offset[x < v ? 0 : x == v ? 1 : 2]++] = x;
+				}
+			});
+			RadixSort.run(pool, chunks, c -> System.arraycopy(b, from + bounds[c], a, from + bounds[c], bounds[c + 1] - bounds[c]));
+
+			int lt = from + less;
+			int gt = count[chunks - 1][1]; // end of the equal keys
+			if (k < lt) {
+				hi = lt;
+			} else if (k >= gt) {
+				lo = gt;
+			} else {
+				return a[k];
+			}
+		}
+		select(a, lo, hi - 1, k, depthLimit(hi - lo));
+		return a[k];
+	}
+
+	/**
+	 * partialSort with parallelSelect and QuickThreeWaySort.Parallel.
+	 */
+	public static void parallelPartialSort(int[] a, int k, ForkJoinPool pool) {
+		checkCount(a.length, k);
+		if (k == 0) return;
+		if (k < a.length) {
+			parallelSelect(a, k - 1, pool);
+			k--;
+		}
+		QuickThreeWaySort.Parallel.sort(a, 0, k - 1, pool);
+	}
+
+	/**
+	 * a[lo..hi], depth levels with the ninther left, median of medians after.
+	 */
+	static void select(int[] a, int lo, int hi, int k, int depth) {
+		while (hi - lo >= INSERTION_SORT_CUTOFF) {
+			int p = depth-- > 0 ? pivot(a, lo, hi) : medianOfMedians(a, lo, hi);
+			long lg = partition(a, lo, hi, p);
+			if (k < lt(lg)) {
+				hi = lt(lg) - 1;
+			} else if (k > gt(lg)) {
+				lo = gt(lg) + 1;
+			} else {
+				return;
+			}
+		}
+		insertionSort(a, lo, hi);
+	}
+
+	/**
+	 * Medians of groups of 5 are moved to the front of the range, and the
+	 * median of them is selected there, with medians of medians all the way
+	 * down.
+	 *
+	 * @return index of the median of medians
+	 */
+	private static int medianOfMedians(int[] a, int lo, int hi) {
+		int m = lo;
+		for (int i = lo; i <= hi; i += GROUP) {
+			int end = Math.min(i + GROUP - 1, hi);
+			insertionSort(a, i, end);
+			exch(a, m++, i + (end - i) / 2);
+		}
+		int mid = lo + (m - lo - 1) / 2;
+		select(a, lo, m - 1, mid, 0);
+		return mid;
+	}
+
+	/* long[] */
+
+	public static long select(long[] a, int k) {
+		return select(a, 0, a.length, k);
+	}
+
+	public static long select(long[] a, int from, int to, int k) {
+		checkIndex(from, to, k);
+		select(a, from, to - 1, k, depthLimit(to - from));
+		return a[k];
+	}
+
+	public static void partialSort(long[] a, int k) {
+		checkCount(a.length, k);
+		if (k == 0) return;
+		if (k < a.length) {
+			select(a, 0, a.length - 1, k - 1, depthLimit(a.length));
+			k--; // the selected one is in place already
+		}
+		QuickThreeWaySort.Iterative.sort(a, 0, k - 1, depthLimit(k));
+	}
+
+	public static long parallelSelect(long[] a, int k) {
+		return parallelSelect(a, k, ForkJoinPool.commonPool());
+	}
+
+	public static long parallelSelect(long[] a, int k, ForkJoinPool pool) {
+		checkIndex(0, a.length, k);
+		int lo = 0, hi = a.length;
+		long[] buf = null;
+		for (int depth = depthLimit(a.length); depth > 0; depth--) {
+			int n = hi - lo;
+			int chunks = Math.min(pool.getParallelism(), n / MIN_CHUNK);
+			if (chunks < 2) break;
+			if (buf == null) buf = new long[a.length];
+
+			int from = lo;
+			long[] b = buf;
+			long v = a[pivot(a, lo, hi - 1)];
+			int[] bounds = RadixSort.bounds(n, chunks);
+			int[][] count = new int[chunks][3];
+			RadixSort.run(pool, chunks, c -> {
+				int[] cnt = count[c];
+				for (int i = from + bounds[c]; i < from + bounds[c + 1]; i++) {
+					cnt[a[i] < v ? 0 : a[i] == v ? 1 : 2]++;
+				}
+			});
+			int less = offsets(count, from);
+			RadixSort.run(pool, chunks, c -> {
+				int[] offset = count[c];
+				for (int i = from + bounds[c]; i < from + bounds[c + 1]; i++) {
+					long x = a[i];
+					b[offset[x < v ? 0 : x == v ? 1 : 2]++] = x;
+				}
+			});
+			RadixSort.run(pool, chunks, c -> System.arraycopy(b, from + bounds[c], a, from + bounds[c], bounds[c + 1] - bounds[c]));
+
+			int lt = from + less;
+			int gt = count[chunks - 1][1];
+			if (k < lt) {
+				hi = lt;
+			} else if (k >= gt) {
+				lo = gt;
+			} else {
+				return a[k];
+			}
+		}
+		select(a, lo, hi - 1, k, depthLimit(hi - lo));
+		return a[k];
+	}
+
+	public static void parallelPartialSort(long[] a, int k, ForkJoinPool pool) {
+		checkCount(a.length, k);
+		if (k == 0) return;
+		if (k < a.length) {
+			parallelSelect(a, k - 1, pool);
+			k--;
+		}
+		QuickThreeWaySort.Parallel.sort(a, 0, k - 1, pool);
+	}
+
+	static void select(long[] a, int lo, int hi, int k, int depth) {
+		while (hi - lo >= INSERTION_SORT_CUTOFF) {
+			int p = depth-- > 0 ? pivot(a, lo, hi) : medianOfMedians(a, lo, hi);
+			long lg = partition(a, lo, hi, p);
+			if (k < lt(lg)) {
+				hi = lt(lg) - 1;
+			} else if (k > gt(lg)) {
+				lo = gt(lg) + 1;
+			} else {
+				return;
+			}
+		}
+		insertionSort(a, lo, hi);
+	}
+
+	private static int medianOfMedians(long[] a, int lo, int hi) {
+		int m = lo;
+		for (int i = lo; i <= hi; i += GROUP) {
+			int end = Math.min(i + GROUP - 1, hi);
+			insertionSort(a, i, end);
+			exch(a, m++, i + (end - i) / 2);
+		}
+		int mid = lo + (m - lo - 1) / 2;
+		select(a, lo, m - 1, mid, 0);
+		return mid;
+	}
+
+	/**************************************************************************/
+
+	/**
+	 * Turns counts of less, equal and greater keys of every chunk into the
+	 * index where the chunk writes its first key of each - all less keys
+	 * first, chunk by chunk, then all equal, then all greater. After the
+	 * scatter the equal offset of the last chunk is the end of the equal
+	 * keys.
+	 *
+	 * @return count of the less keys
+	 */
+	private static int offsets(int[][] count, int from) {
+		int pos = from;
+		int less = 0;
+		for (int part = 0; part < 3; part++) {
+			for (int[] cnt : count) {
+				int k = cnt[part];
+				cnt[part] = pos;
+				pos += k;
+			}
+			if (part == 0) less = pos - from;
+		}
+		return less;
+	}
+
+	private static void checkIndex(int from, int to, int k) {
+		if (k < from || k >= to) {
+			throw new IllegalArgumentException("k " + k + " is not in [" + from + ", " + to + ")");
+		}
+	}
+
+	private static void checkCount(int n, int k) {
+		if (k < 0 || k > n) {
+			throw new IllegalArgumentException("k " + k + " is not in [0, " + n + "]");
+		}
+	}
+}
@@ -1,12 +1,587 @@
 package sorts;
 
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Quick sort with 3-way partitioning (Dijkstra) - a[lo..lt-1] < v,
+ * a[lt..gt] == v, a[gt+1..hi] > v. Keys equal to the pivot are done after
+ * one partitioning, so with few distinct keys the sort is linear instead of
+ * N log N, and it never goes quadratic on equal keys like 2-way partitioning
+ * with a bad equal-keys policy does.
+ *
+ * Pivot is the median of 3, or Tukey's ninther for big ranges. It still can
+ * be fooled, so there is an introsort guard - after 2 log N levels of
+ * partitioning a range is finished with heap sort, which is N log N always.
+ * Small ranges go to insertion sort.
+ *
+ * Recursive - recursion into the smaller part, loop on the bigger one, so
+ * the stack is at most log N frames deep.
+ * Iterative - same, but ranges wait on an explicit stack instead of the call
+ * stack.
+ * Parallel - ranges above a threshold are split into fork-join tasks, the
+ * smaller ones are sorted as in Iterative.
+ *
+ * https://algs4.cs.princeton.edu/23quicksort/Quick3way.java.html
+ */
 public class QuickThreeWaySort {
 
+	static final int INSERTION_SORT_CUTOFF = 16;
+	private static final int NINTHER_CUTOFF = 128;
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
+
 	public static class Recursive {
 
+		public static void sort(int[] a) {
+			sort(a, 0, a.length - 1, depthLimit(a.length));
+		}
+
+		public static void sort(long[] a) {
+			sort(a, 0, a.length - 1, depthLimit(a.length));
+		}
+
+		public static <T> void sort(T[] a, Comparator<? super T> c) {
+			sort(a, 0, a.length - 1, depthLimit(a.length), c);
+		}
+
+		private static void sort(int[] a, int lo, int hi, int depth) {
+			while (hi - lo >= INSERTION_SORT_CUTOFF) {
+				if (depth-- == 0) {
+					heapSort(a, lo, hi);
+					return;
+				}
+				long p = partition(a, lo, hi);
+				int lt = lt(p), gt = gt(p);
+				if (lt - lo < hi - gt) {
+					sort(a, lo, lt - 1, depth);
+					lo = gt + 1;
+				} else {
+					sort(a, gt + 1, hi, depth);
+					hi = lt - 1;
+				}
+			}
+			insertionSort(a, lo, hi);
+		}
+
+		private static void sort(long[] a, int lo, int hi, int depth) {
+			while (hi - lo >= INSERTION_SORT_CUTOFF) {
+				if (depth-- == 0) {
+					heapSort(a, lo, hi);
+					return;
+				}
+				long p = partition(a, lo, hi);
+				int lt = lt(p), gt = gt(p);
+				if (lt - lo < hi - gt) {
+					sort(a, lo, lt - 1, depth);
+					lo = gt + 1;
+				} else {
+					sort(a, gt + 1, hi, depth);
+					hi = lt - 1;
+				}
+			}
+			insertionSort(a, lo, hi);
+		}
+
+		private static <T> void sort(T[] a, int lo, int hi, int depth, Comparator<? super T> c) {
+			while (hi - lo >= INSERTION_SORT_CUTOFF) {
+				if (depth-- == 0) {
+					heapSort(a, lo, hi, c);
+					return;
+				}
+				long p = partition(a, lo, hi, c);
+				int lt = lt(p), gt = gt(p);
+				if (lt - lo < hi - gt) {
+					sort(a, lo, lt - 1, depth, c);
+					lo = gt + 1;
+				} else {
+					sort(a, gt + 1, hi, depth, c);
+					hi = lt - 1;
+				}
+			}
+			insertionSort(a, lo, hi, c);
+		}
 	}
 
+	/**
+	 * The bigger part goes to the stack and we go on with the smaller one, so
+	 * the current range at least halves between pushes - the stack never has
+	 * more than log N ranges, 32 for any int index.
+	 */
 	public static class Iterative {
 
+		public static void sort(int[] a) {
+			sort(a, 0, a.length - 1, depthLimit(a.length));
+		}
+
+		public static void sort(long[] a) {
+			sort(a, 0, a.length - 1, depthLimit(a.length));
+		}
+
+		public static <T> void sort(T[] a, Comparator<? super T> c) {
+			sort(a, 0, a.length - 1, depthLimit(a.length), c);
+		}
+
+		static void sort(int[] a, int lo, int hi, int depth) {
+			int[] stack = new int[3 * Integer.SIZE]; // lo, hi, depth
+			int top = 0;
+			while (true) {
+				while (hi - lo >= INSERTION_SORT_CUTOFF && depth > 0) {
+					depth--;
+					long p = partition(a, lo, hi);
+					int lt = lt(p), gt = gt(p);
+					if (lt - lo < hi - gt) {
+						top = push(stack, top, gt + 1, hi, depth);
+						hi = lt - 1;
+					} else {
+						top = push(stack, top, lo, lt - 1, depth);
+						lo = gt + 1;
+					}
+				}
+				if (hi - lo >= INSERTION_SORT_CUTOFF) {
+					heapSort(a, lo, hi);
+				} else {
+					insertionSort(a, lo, hi);
+				}
+				if (top == 0) {
+					return;
+				}
+				depth = stack[--top];
+				hi = stack[--top];
+				lo = stack[--top];
+			}
+		}
+
+		static void sort(long[] a, int lo, int hi, int depth) {
+			int[] stack = new int[3 * Integer.SIZE];
+			int top = 0;
+			while (true) {
+				while (hi - lo >= INSERTION_SORT_CUTOFF && depth > 0) {
+					depth--;
+					long p = partition(a, lo, hi);
+					int lt = lt(p), gt = gt(p);
+					if (lt - lo < hi - gt) {
+						top = push(stack, top, gt + 1, hi, depth);
+						hi = lt - 1;
+					} else {
+						top = push(stack, top, lo, lt - 1, depth);
+						lo = gt + 1;
+					}
+				}
+				if (hi - lo >= INSERTION_SORT_CUTOFF) {
+					heapSort(a, lo, hi);
+				} else {
+					insertionSort(a, lo, hi);
+				}
+				if (top == 0) {
+					return;
+				}
+				depth = stack[--top];
+				hi = stack[--top];
+				lo = stack[--top];
+			}
+		}
+
+		static <T> void sort(T[] a, int lo, int hi, int depth, Comparator<? super T> c) {
+			int[] stack = new int[3 * Integer.SIZE];
+			int top = 0;
+			while (true) {
+				while (hi - lo >= INSERTION_SORT_CUTOFF && depth > 0) {
+					depth--;
+					long p = partition(a, lo, hi, c);
+					int lt = lt(p), gt = gt(p);
+					if (lt - lo < hi - gt) {
+						top = push(stack, top, gt + 1, hi, depth);
+						hi = lt - 1;
+					} else {
+						top = push(stack, top, lo, lt - 1, depth);
+						lo = gt + 1;
+					}
+				}
+				if (hi - lo >= INSERTION_SORT_CUTOFF) {
+					heapSort(a, lo, hi, c);
+				} else {
+					insertionSort(a, lo, hi, c);
+				}
+				if (top == 0) {
+					return;
+				}
+				depth = stack[--top];
+				hi = stack[--top];
+				lo = stack[--top];
+			}
+		}
+
+		private static int push(int[] stack, int top, int lo, int hi, int depth) {
+			stack[top++] = lo;
+			stack[top++] = hi;
+			stack[top++] = depth;
+			return top;
+		}
+	}
+
+	/**
+	 * Both parts of a range above the threshold become fork-join tasks, the
+	 * depth guard goes down with them. Common pool by default.
+	 */
+	public static class Parallel {
+
+		public static void sort(int[] a) {
+			sort(a, ForkJoinPool.commonPool());
+		}
+
+		public static void sort(int[] a, ForkJoinPool pool) {
+			pool.invoke(new IntTask(a, 0, a.length - 1, depthLimit(a.length)));
+		}
+
+		public static void sort(long[] a) {
+			sort(a, ForkJoinPool.commonPool());
+		}
+
+		public static void sort(long[] a, ForkJoinPool pool) {
+			pool.invoke(new LongTask(a, 0, a.length - 1, depthLimit(a.length)));
+		}
+
+		/**
+		 * Sorts a[lo..hi].
+		 */
+		static void sort(int[] a, int lo, int hi, ForkJoinPool pool) {
+			pool.invoke(new IntTask(a, lo, hi, depthLimit(hi - lo + 1)));
+		}
+
+		static void sort(long[] a, int lo, int hi, ForkJoinPool pool) {
+			pool.invoke(new LongTask(a, lo, hi, depthLimit(hi - lo + 1)));
+		}
+
+		public static <T> void sort(T[] a, Comparator<? super T> c) {
+			sort(a, c, ForkJoinPool.commonPool());
+		}
+
+		public static <T> void sort(T[] a, Comparator<? super T> c, ForkJoinPool pool) {
+			pool.invoke(new ObjectTask<>(a, 0, a.length - 1, depthLimit(a.length), c));
+		}
+
+		private static final class IntTask extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			private final int[] a;
+			private final int lo, hi, depth;
+
+			IntTask(int[] a, int lo, int hi, int depth) {
+				this.a = a;
+				this.lo = lo;
+				this.hi = hi;
+				this.depth = depth;
+			}
+
+			@Override
+			protected void compute() {
+				if (hi - lo < PARALLEL_THRESHOLD || depth == 0) {
+					Iterative.sort(a, lo, hi, depth);
+					return;
+				}
+				long p = partition(a, lo, hi);
+				invokeAll(new IntTask(a, lo, lt(p) - 1, depth - 1), new IntTask(a, gt(p) + 1, hi, depth - 1));
+			}
+		}
+
+		private static final class LongTask extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			private final long[] a;
+			private final int lo, hi, depth;
+
+			LongTask(long[] a, int lo, int hi, int depth) {
+				this.a = a;
+				this.lo = lo;
+				this.hi = hi;
+				this.depth = depth;
+			}
+
+			@Override
+			protected void compute() {
+				if (hi - lo < PARALLEL_THRESHOLD || depth == 0) {
+					Iterative.sort(a, lo, hi, depth);
+					return;
+				}
+				long p = partition(a, lo, hi);
+				invokeAll(new LongTask(a, lo, lt(p) - 1, depth - 1), new LongTask(a, gt(p) + 1, hi, depth - 1));
+			}
+		}
+
+		private static final class ObjectTask<T> extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			private final T[] a;
+			private final int lo, hi, depth;
+			private final Comparator<? super T> c;
+
+			ObjectTask(T[] a, int lo, int hi, int depth, Comparator<? super T> c) {
+				this.a = a;
+				this.lo = lo;
+				this.hi = hi;
+				this.depth = depth;
+				this.c = c;
+			}
+
+			@Override
+			protected void compute() {
+				if (hi - lo < PARALLEL_THRESHOLD || depth == 0) {
+					Iterative.sort(a, lo, hi, depth, c);
+					return;
+				}
+				long p = partition(a, lo, hi, c);
+				invokeAll(new ObjectTask<>(a, lo, lt(p) - 1, depth - 1, c),
+						new ObjectTask<>(a, gt(p) + 1, hi, depth - 1, c));
+			}
+		}
+	}
+
+	/**************************************************************************/
+
+	/**
+	 * 2 floor(log2 N) levels of partitioning, like introsort.
+	 */
+	static int depthLimit(int n) {
+		return n == 0 ? 0 : 2 * (31 - Integer.numberOfLeadingZeros(n));
+	}
+
+	// partition returns lt and gt packed into a long
+	static int lt(long p) {
+		return (int) (p >>> 32);
+	}
+
+	static int gt(long p) {
+		return (int) p;
+	}
+
+	private static long pack(int lt, int gt) {
+		return (long) lt << 32 | (gt & 0xffffffffL);
+	}
+
+	/* int[] */
+
+	private static long partition(int[] a, int lo, int hi) {
+		return partition(a, lo, hi, pivot(a, lo, hi));
+	}
+
+	/**
+	 * Around a[p], p in [lo, hi].
+	 */
+	static long partition(int[] a, int lo, int hi, int p) {
+		exch(a, lo, p);
+		int v = a[lo];
+		int lt = lo, gt = hi, i = lo + 1;
+		while (i <= gt) {
+			if (a[i] < v) exch(a, lt++, i++);
+			else if (a[i] > v) exch(a, i, gt--);
+			else i++;
+		}
+		return pack(lt, gt);
+	}
+
+	static int pivot(int[] a, int lo, int hi) {
+		int n = hi - lo + 1;
+		int mid = lo + n / 2;
+		if (n > NINTHER_CUTOFF) {
+			int eps = n / 8;
+			return median3(a, median3(a, lo, lo + eps, lo + eps + eps), median3(a, mid - eps, mid, mid + eps),
+					median3(a, hi - eps - eps, hi - eps, hi));
+		}
+		return median3(a, lo, mid, hi);
+	}
+
+	private static int median3(int[] a, int i, int j, int k) {
+		return a[i] < a[j]
+				? (a[j] < a[k] ? j : a[i] < a[k] ? k : i)
+				: (a[k] < a[j] ? j : a[k] < a[i] ? k : i);
+	}
+
+	static void insertionSort(int[] a, int lo, int hi) {
+		for (int i = lo + 1; i <= hi; i++) {
+			int v = a[i];
+			int j = i;
+			while (j > lo && v < a[j - 1]) {
+				a[j] = a[j - 1];
+				j--;
+			}
+			a[j] = v;
+		}
+	}
+
+	private static void heapSort(int[] a, int lo, int hi) {
+		int n = hi - lo + 1;
+		for (int k = n / 2 - 1; k >= 0; k--) {
+			sink(a, lo, k, n);
+		}
+		while (n > 1) {
+			exch(a, lo, lo + --n);
+			sink(a, lo, 0, n);
+		}
+	}
+
+	// max heap over a[lo..lo+n-1]
+	private static void sink(int[] a, int lo, int k, int n) {
+		while (2 * k + 1 < n) {
+			int j = 2 * k + 1;
+			if (j + 1 < n && a[lo + j] < a[lo + j + 1]) j++;
+			if (a[lo + k] >= a[lo + j]) break;
+			exch(a, lo + k, lo + j);
+			k = j;
+		}
+	}
+
+	static void exch(int[] a, int i, int j) {
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	/* long[] */
+
+	private static long partition(long[] a, int lo, int hi) {
+		return partition(a, lo, hi, pivot(a, lo, hi));
+	}
+
+	/**
+	 * Around a[p], p in [lo, hi].
+	 */
+	static long partition(long[] a, int lo, int hi, int p) {
+		exch(a, lo, p);
+		long v = a[lo];
+		int lt = lo, gt = hi, i = lo + 1;
+		while (i <= gt) {
+			if (a[i] < v) exch(a, lt++, i++);
+			else if (a[i] > v) exch(a, i, gt--);
+			else i++;
+		}
+		return pack(lt, gt);
+	}
+
+	static int pivot(long[] a, int lo, int hi) {
+		int n = hi - lo + 1;
+		int mid = lo + n / 2;
+		if (n > NINTHER_CUTOFF) {
+			int eps = n / 8;
+			return median3(a, median3(a, lo, lo + eps, lo + eps + eps), median3(a, mid - eps, mid, mid + eps),
+					median3(a, hi - eps - eps, hi - eps, hi));
+		}
+		return median3(a, lo, mid, hi);
+	}
+
+	private static int median3(long[] a, int i, int j, int k) {
+		return a[i] < a[j]
+				? (a[j] < a[k] ? j : a[i] < a[k] ? k : i)
+				: (a[k] < a[j] ? j : a[k] < a[i] ? k : i);
+	}
+
+	static void insertionSort(long[] a, int lo, int hi) {
+		for (int i = lo + 1; i <= hi; i++) {
+			long v = a[i];
+			int j = i;
+			while (j > lo && v < a[j - 1]) {
+				a[j] = a[j - 1];
+				j--;
+			}
+			a[j] = v;
+		}
+	}
+
+	private static void heapSort(long[] a, int lo, int hi) {
+		int n = hi - lo + 1;
+		for (int k = n / 2 - 1; k >= 0; k--) {
+			sink(a, lo, k, n);
+		}
+		while (n > 1) {
+			exch(a, lo, lo + --n);
+			sink(a, lo, 0, n);
+		}
+	}
+
+	private static void sink(long[] a, int lo, int k, int n) {
+		while (2 * k + 1 < n) {
+			int j = 2 * k + 1;
+			if (j + 1 < n && a[lo + j] < a[lo + j + 1]) j++;
+			if (a[lo + k] >= a[lo + j]) break;
+			exch(a, lo + k, lo + j);
+			k = j;
+		}
+	}
+
+	static void exch(long[] a, int i, int j) {
+		long t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	/* T[] */
+
+	private static <T> long partition(T[] a, int lo, int hi, Comparator<? super T> c) {
+		exch(a, lo, pivot(a, lo, hi, c));
+		T v = a[lo];
+		int lt = lo, gt = hi, i = lo + 1;
+		while (i <= gt) {
+			int cmp = c.compare(a[i], v);
+			if (cmp < 0) exch(a, lt++, i++);
+			else if (cmp > 0) exch(a, i, gt--);
+			else i++;
+		}
+		return pack(lt, gt);
+	}
+
+	private static <T> int pivot(T[] a, int lo, int hi, Comparator<? super T> c) {
+		int n = hi - lo + 1;
+		int mid = lo + n / 2;
+		if (n > NINTHER_CUTOFF) {
+			int eps = n / 8;
+			return median3(a, median3(a, lo, lo + eps, lo + eps + eps, c), median3(a, mid - eps, mid, mid + eps, c),
+					median3(a, hi - eps - eps, hi - eps, hi, c), c);
+		}
+		return median3(a, lo, mid, hi, c);
+	}
+
+	private static <T> int median3(T[] a, int i, int j, int k, Comparator<? super T> c) {
+		return c.compare(a[i], a[j]) < 0
+				? (c.compare(a[j], a[k]) < 0 ? j : c.compare(a[i], a[k]) < 0 ? k : i)
+				: (c.compare(a[k], a[j]) < 0 ? j : c.compare(a[k], a[i]) < 0 ? k : i);
+	}
+
+	private static <T> void insertionSort(T[] a, int lo, int hi, Comparator<? super T> c) {
+		for (int i = lo + 1; i <= hi; i++) {
+			T v = a[i];
+			int j = i;
+			while (j > lo && c.compare(v, a[j - 1]) < 0) {
+				a[j] = a[j - 1];
+				j--;
+			}
+			a[j] = v;
+		}
+	}
+
+	private static <T> void heapSort(T[] a, int lo, int hi, Comparator<? super T> c) {
+		int n = hi - lo + 1;
+		for (int k = n / 2 - 1; k >= 0; k--) {
+			sink(a, lo, k, n, c);
+		}
+		while (n > 1) {
+			exch(a, lo, lo + --n);
+			sink(a, lo, 0, n, c);
+		}
+	}
+
+	private static <T> void sink(T[] a, int lo, int k, int n, Comparator<? super T> c) {
+		while (2 * k + 1 < n) {
+			int j = 2 * k + 1;
+			if (j + 1 < n && c.compare(a[lo + j], a[lo + j + 1]) < 0) j++;
+			if (c.compare(a[lo + k], a[lo + j]) >= 0) break;
+			exch(a, lo + k, lo + j);
+			k = j;
+		}
+	}
+
+	private static void exch(Object[] a, int i, int j) {
+		Object t = a[i];
+		a[i] = a[j];
+		a[j] = t;
 	}
 }
@@ -0,0 +1,288 @@
+package sorts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * LSD radix sort of ints and longs - 11 bits per digit, so 3 passes for an
+ * int and 6 for a long, every pass is a counting sort by one digit, stable,
+ * so after the last one the keys are sorted. O(N) time and N more memory for
+ * the buffer, no comparisons at all.
+ *
+ * Signed keys: x ^ MIN_VALUE turns signed order into unsigned order, the
+ * digits are taken from that, so negative keys come first.
+ *
+ * Counts of all digits are made in one read before the passes. A pass where
+ * all keys have the same digit (a small range of keys, say) would move
+ * nothing, so it is skipped.
+ *
+ * parallelSort splits the array into chunks, one per thread. Every pass
+ * counts digits of every chunk in parallel, then the offsets are laid out
+ * digit by digit and chunk by chunk - chunk c writes its keys with digit d
+ * after those of chunks before c - and every chunk scatters its keys in
+ * parallel, so the pass stays stable.
+ *
+ * Small arrays go to Arrays.sort.
+ */
+public class RadixSort {
+
+	private static final int BITS = 11;
+	private static final int RADIX = 1 << BITS;
+	private static final int MASK = RADIX - 1;
+	private static final int INT_PASSES = (Integer.SIZE + BITS - 1) / BITS;
+	private static final int LONG_PASSES = (Long.SIZE + BITS - 1) / BITS;
+	private static final int CUTOFF = 1 << 8;
+	private static final int MIN_CHUNK = 1 << 16;
+
+	public static void sort(int[] a) {
+		sort(a, 0, a.length);
+	}
+
+	/**
+	 * Sorts a[from, to).
+	 */
+	public static void sort(int[] a, int from, int to) {
+		int n = to - from;
+		if (n < CUTOFF) {
+			Arrays.sort(a, from, to);
+			return;
+		}
+
+		int[][] count = new int[INT_PASSES][RADIX];
+		for (int i = from; i < to; i++) {
+			int x = a[i] ^ Integer.MIN_VALUE;
+			for (int p = 0; p < INT_PASSES; p++) {
+				count[p][x >>> p * BITS & MASK]++;
+			}
+		}
+
+		int[] src = a;
+		int[] dst = new int[n];
+		int srcFrom = from;
+		int dstFrom = 0;
+		for (int p = 0; p < INT_PASSES; p++) {
+			if (!offsets(count[p], n, dstFrom)) {
+				continue;
+			}
+			int shift = p * BITS;
+			int[] offset = count[p];
+			for (int i = srcFrom; i < srcFrom + n; i++) {
+				int x = src[i];
+				dst[offset[(x ^ Integer.MIN_VALUE) >>> shift & MASK]++] = x;
+			}
+			int[] t = src;
+			src = dst;
+			dst = t;
+			int f = srcFrom;
+			srcFrom = dstFrom;
+			dstFrom = f;
+		}
+		if (src != a) {
+			System.arraycopy(src, srcFrom, a, from, n);
+		}
+	}
+
+	public static void sort(long[] a) {
+		sort(a, 0, a.length);
+	}
+
+	/**
+	 * Sorts a[from, to).
+	 */
+	public static void sort(long[] a, int from, int to) {
+		int n = to - from;
+		if (n < CUTOFF) {
+			Arrays.sort(a, from, to);
+			return;
+		}
+
+		int[][] count = new int[LONG_PASSES][RADIX];
+		for (int i = from; i < to; i++) {
+			long x = a[i] ^ Long.MIN_VALUE;
+			for (int p = 0; p < LONG_PASSES; p++) {
+				count[p][(int) (x >>> p * BITS) & MASK]++;
+			}
+		}
+
+		long[] src = a;
+		long[] dst = new long[n];
+		int srcFrom = from;
+		int dstFrom = 0;
+		for (int p = 0; p < LONG_PASSES; p++) {
+			if (!offsets(count[p], n, dstFrom)) {
+				continue;
+			}
+			int shift = p * BITS;
+			int[] offset = count[p];
+			for (int i = srcFrom; i < srcFrom + n; i++) {
+				long x = src[i];
+				dst[offset[(int) ((x ^ Long.MIN_VALUE) >>> shift) & MASK]++] = x;
+			}
+			long[] t = src;
+			src = dst;
+			dst = t;
+			int f = srcFrom;
+			srcFrom = dstFrom;
+			dstFrom = f;
+		}
+		if (src != a) {
+			System.arraycopy(src, srcFrom, a, from, n);
+		}
+	}
+
+	public static void parallelSort(int[] a) {
+		parallelSort(a, ForkJoinPool.commonPool());
+	}
+
+	public static void parallelSort(int[] a, ForkJoinPool pool) {
+		int n = a.length;
+		int chunks = Math.min(pool.getParallelism(), n / MIN_CHUNK);
+		if (chunks < 2) {
+			sort(a);
+			return;
+		}
+
+		int[] bounds = bounds(n, chunks);
+		int[][] count = new int[chunks][RADIX];
+		int[] src = a;
+		int[] dst = new int[n];
+		for (int p = 0; p < INT_PASSES; p++) {
+			int shift = p * BITS;
+			int[] s = src;
+			int[] d = dst;
+			run(pool, chunks, c -> {
+				int[] cnt = count[c];
+				Arrays.fill(cnt, 0);
+				for (int i = bounds[c]; i < bounds[c + 1]; i++) {
+					cnt[(s[i] ^ Integer.MIN_VALUE) >>> shift & MASK]++;
+				}
+			});
+			if (!offsets(count, n)) {
+				continue;
+			}
+			run(pool, chunks, c -> {
+				int[] offset = count[c];
+				for (int i = bounds[c]; i < bounds[c + 1]; i++) {
+					int x = s[i];
+					d[offset[(x ^ Integer.MIN_VALUE) >>> shift & MASK]++] = x;
+				}
+			});
+			src = d;
+			dst = s;
+		}
+		if (src != a) {
+			System.arraycopy(src, 0, a, 0, n);
+		}
+	}
+
+	public static void parallelSort(long[] a) {
+		parallelSort(a, ForkJoinPool.commonPool());
+	}
+
+	public static void parallelSort(long[] a, ForkJoinPool pool) {
+		int n = a.length;
+		int chunks = Math.min(pool.getParallelism(), n / MIN_CHUNK);
+		if (chunks < 2) {
+			sort(a);
+			return;
+		}
+
+		int[] bounds = bounds(n, chunks);
+		int[][] count = new int[chunks][RADIX];
+		long[] src = a;
+		long[] dst = new long[n];
+		for (int p = 0; p < LONG_PASSES; p++) {
+			int shift = p * BITS;
+			long[] s = src;
+			long[] d = dst;
+			run(pool, chunks, c -> {
+				int[] cnt = count[c];
+				Arrays.fill(cnt, 0);
+				for (int i = bounds[c]; i < bounds[c + 1]; i++) {
+					cnt[(int) ((s[i] ^ Long.MIN_VALUE) >>> shift) & MASK]++;
+				}
+			});
+			if (!offsets(count, n)) {
+				continue;
+			}
+			run(pool, chunks, c -> {
+				int[] offset = count[c];
+				for (int i = bounds[c]; i < bounds[c + 1]; i++) {
+					long x = s[i];
+					d[offset[(int) ((x ^ Long.MIN_VALUE) >>> shift) & MASK]++] = x;
+				}
+			});
+			src = d;
+			dst = s;
+		}
+		if (src != a) {
+			System.arraycopy(src, 0, a, 0, n);
+		}
+	}
+
+	/**************************************************************************/
+
+	/**
+	 * Turns counts of a digit into the first index of every digit, starting
+	 * at from.
+	 *
+	 * @return false if all n keys have the same digit, the pass is not needed
+	 */
+	private static boolean offsets(int[] count, int n, int from) {
+		int pos = from;
+		for (int d = 0; d < RADIX; d++) {
+			int k = count[d];
+			if (k == n) {
+				return false;
+			}
+			count[d] = pos;
+			pos += k;
+		}
+		return true;
+	}
+
+	/**
+	 * Same for the counts of every chunk - digit by digit, and chunk by chunk
+	 * inside a digit.
+	 */
+	private static boolean offsets(int[][] count, int n) {
+		int pos = 0;
+		for (int d = 0; d < RADIX; d++) {
+			int start = pos;
+			for (int[] cnt : count) {
+				int k = cnt[d];
+				cnt[d] = pos;
+				pos += k;
+			}
+			if (pos - start == n) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static int[] bounds(int n, int chunks) {
+		int[] bounds = new int[chunks + 1];
+		for (int c = 0; c <= chunks; c++) {
+			bounds[c] = (int) ((long) n * c / chunks);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Runs body for every chunk on the pool and waits for all of them.
+	 */
+	static void run(ForkJoinPool pool, int chunks, IntConsumer body) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			int chunk = c;
+			tasks.add(ForkJoinTask.adapt(() -> body.accept(chunk)));
+		}
+		// invokeAll has to run inside the pool
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+	}
+}
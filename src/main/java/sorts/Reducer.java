@@ -0,0 +1,75 @@
+package sorts;
+
+import java.io.IOException;
+
+/**
+ * What ExternalSort does with equal numbers. The reducer is applied every
+ * time a sorted sequence is written - to every run and on every merge - so
+ * duplicates collapse as early as possible and the runs shrink as the sort
+ * goes.
+ *
+ * NONE - all numbers are kept.
+ * DISTINCT - every number is kept once.
+ * COUNT - every number is kept once with the number of times it was in the
+ * input as its weight.
+ * SUM - input lines are "key value", every key is kept once with the sum of
+ * its values as its weight.
+ */
+public enum Reducer {
+	NONE,
+	DISTINCT,
+	COUNT,
+	SUM;
+
+	/**
+	 * Whether the runs carry a weight after every number.
+	 */
+	boolean weighted() {
+		return this == COUNT || this == SUM;
+	}
+
+	RunWriter wrap(RunWriter w) {
+		return this == NONE ? w : new ReducingWriter(w, weighted());
+	}
+
+	/**************************************************************************/
+
+	/**
+	 * Numbers come sorted, so equal ones are next to each other - we hold the
+	 * last one and add up its weights until a different number comes.
+	 */
+	private static final class ReducingWriter implements RunWriter {
+		private final RunWriter w;
+		private final boolean weighted;
+		private boolean holding;
+		private int value;
+		private long weight;
+
+		ReducingWriter(RunWriter w, boolean weighted) {
+			this.w = w;
+			this.weighted = weighted;
+		}
+
+		@Override
+		public void write(int value, long weight) throws IOException {
+			if (holding && value == this.value) {
+				this.weight += weight;
+				return;
+			}
+			if (holding) {
+				w.write(this.value, weighted ? this.weight : 1);
+			}
+			holding = true;
+			this.value = value;
+			this.weight = weight;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (holding) {
+				w.write(value, weighted ? weight : 1);
+			}
+			w.close();
+		}
+	}
+}
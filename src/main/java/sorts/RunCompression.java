@@ -0,0 +1,153 @@
+package sorts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the temp files, sits between the format and the storage, so
+ * it works with any of them. The result file is never compressed.
+ *
+ * NONE - blocks go to the storage as they are.
+ * DEFLATE - raw deflate stream at the fastest level. Worth it when the disk is
+ * the bottleneck, it costs CPU on both the split and merge phases. With the
+ * DELTA format there is little left to compress.
+ */
+public enum RunCompression {
+	NONE {
+		@Override
+		BlockInput wrap(BlockInput in, int blockSize) {
+			return in;
+		}
+
+		@Override
+		BlockOutput wrap(BlockOutput out, int blockSize) {
+			return out;
+		}
+	},
+	DEFLATE {
+		@Override
+		BlockInput wrap(BlockInput in, int blockSize) {
+			return new InflateInput(in, blockSize);
+		}
+
+		@Override
+		BlockOutput wrap(BlockOutput out, int blockSize) {
+			return new DeflateOutput(out, blockSize);
+		}
+	};
+
+	abstract BlockInput wrap(BlockInput in, int blockSize);
+
+	abstract BlockOutput wrap(BlockOutput out, int blockSize);
+
+	/**************************************************************************/
+
+	/**
+	 * Inflates into its own block until it is full, so the blocks keep the
+	 * same contract - blockSize bytes except the last one.
+	 */
+	private static final class InflateInput implements BlockInput {
+		private final BlockInput in;
+		private final Inflater inflater = new Inflater(true);
+		private final ByteBuffer buf;
+		private byte[] compressed = new byte[0];
+
+		InflateInput(BlockInput in, int blockSize) {
+			this.in = in;
+			buf = ByteBuffer.allocate(blockSize);
+		}
+
+		@Override
+		public ByteBuffer next() throws IOException {
+			byte[] a = buf.array();
+			int size = 0;
+			try {
+				while (size < a.length && !inflater.finished()) {
+					if (inflater.needsInput()) {
+						ByteBuffer block = in.next();
+						if (block == null) {
+							// a finished stream ends with its last block, this one was cut off
+							throw new IOException("truncated temp file");
+						}
+						int len = block.remaining();
+						if (compressed.length < len) {
+							compressed = new byte[len];
+						}
+						block.get(compressed, 0, len);
+						inflater.setInput(compressed, 0, len);
+					}
+					size += inflater.inflate(a, size, a.length - size);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("broken temp file", e);
+			}
+			if (size == 0) {
+				return null;
+			}
+			buf.clear();
+			buf.limit(size);
+			return buf;
+		}
+
+		@Override
+		public void close() throws IOException {
+			inflater.end();
+			in.close();
+		}
+	}
+
+	private static final class DeflateOutput implements BlockOutput {
+		private final BlockOutput out;
+		private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+		private final ByteBuffer buf;
+		private final byte[] compressed;
+
+		DeflateOutput(BlockOutput out, int blockSize) {
+			this.out = out;
+			buf = ByteBuffer.allocate(blockSize);
+			compressed = new byte[blockSize];
+		}
+
+		@Override
+		public ByteBuffer buffer() {
+			return buf;
+		}
+
+		@Override
+		public ByteBuffer flush() throws IOException {
+			deflater.setInput(buf.array(), 0, buf.position());
+			while (!deflater.needsInput()) {
+				drain();
+			}
+			buf.clear();
+			return buf;
+		}
+
+		private void drain() throws IOException {
+			int len = deflater.deflate(compressed);
+			ByteBuffer target = out.buffer();
+			for (int off = 0; off < len; ) {
+				if (!target.hasRemaining()) {
+					target = out.flush();
+				}
+				int chunk = Math.min(len - off, target.remaining());
+				target.put(compressed, off, chunk);
+				off += chunk;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+			deflater.finish();
+			while (!deflater.finished()) {
+				drain();
+			}
+			deflater.end();
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package sorts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * How numbers are stored in the temp files and in the result file. Numbers
+ * are decoded and encoded right in the blocks of {@link RunStorage}.
+ *
+ * TEXT - one decimal number per line, same as the input.
+ * BINARY - fixed width little-endian ints, Integer.BYTES per number. No
+ * parsing or formatting on the way in and out, and usually smaller than text.
+ * DELTA - difference with the previous number as a zigzag varint. Numbers of a
+ * sorted run are close to each other, so most of them take 1-2 bytes. Only
+ * meant for sorted runs, otherwise it is just a slower BINARY.
+ *
+ * Weighted runs (see {@link Reducer}) store a long weight after every number -
+ * "number weight" line for TEXT, little-endian long for BINARY and zigzag
+ * varint for DELTA.
+ */
+public enum RunFormat {
+	TEXT {
+		@Override
+		RunReader reader(BlockInput in, boolean weighted) {
+			return new TextReader(in, weighted);
+		}
+
+		@Override
+		RunWriter writer(BlockOutput out, boolean weighted) {
+			return new TextWriter(out, weighted);
+		}
+	},
+	BINARY {
+		@Override
+		RunReader reader(BlockInput in, boolean weighted) {
+			return new BinaryReader(in, weighted);
+		}
+
+		@Override
+		RunWriter writer(BlockOutput out, boolean weighted) {
+			return new BinaryWriter(out, weighted);
+		}
+	},
+	DELTA {
+		@Override
+		RunReader reader(BlockInput in, boolean weighted) {
+			return new DeltaReader(in, weighted);
+		}
+
+		@Override
+		RunWriter writer(BlockOutput out, boolean weighted) {
+			return new DeltaWriter(out, weighted);
+		}
+	};
+
+	// "-9223372036854775808 "
+	private static final int MAX_TEXT_WIDTH = 21;
+	// 7 bits per byte of a long
+	private static final int MAX_VARINT_WIDTH = 10;
+
+	abstract RunReader reader(BlockInput in, boolean weighted);
+
+	abstract RunWriter writer(BlockOutput out, boolean weighted);
+
+	/**************************************************************************/
+
+	/**
+	 * Parses the digits byte by byte, a number might start in one block and
+	 * end in the next one.
+	 */
+	private static final class TextReader implements RunReader {
+		private final BlockInput in;
+		private final boolean weighted;
+		private ByteBuffer buf;
+		private int value;
+		private long weight = 1;
+		private long parsed;
+
+		TextReader(BlockInput in, boolean weighted) {
+			this.in = in;
+			this.weighted = weighted;
+		}
+
+		@Override
+		public boolean next() throws IOException {
+			if (!parse()) {
+				return false;
+			}
+			value = (int) parsed;
+			if (weighted) {
+				if (!parse()) {
+					throw new IOException("temp file ends before the weight of " + value);
+				}
+				weight = parsed;
+			}
+			return true;
+		}
+
+		/**
+		 * Skips whitespace, then reads the number up to the next whitespace.
+		 */
+		private boolean parse() throws IOException {
+			long v = 0;
+			boolean neg = false;
+			boolean digits = false;
+			while (true) {
+				if (buf == null || !buf.hasRemaining()) {
+					buf = in.next();
+					if (buf == null) {
+						break;
+					}
+				}
+				byte b = buf.get();
+				if (b == '\n' || b == ' ' || b == '\t' || b == '\r') {
+					if (digits || neg) break;
+				} else if (b == '-') {
+					neg = true;
+				} else if (b >= '0' && b <= '9') {
+					v = v * 10 + (b - '0');
+					digits = true;
+				}
+			}
+			parsed = neg ? -v : v;
+			return digits;
+		}
+
+		@Override
+		public int value() {
+			return value;
+		}
+
+		@Override
+		public long weight() {
+			return weight;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private static final class TextWriter implements RunWriter {
+		private final BlockOutput out;
+		private final boolean weighted;
+		private final byte[] digits = new byte[AsciiCodec.MAX_LONG_WIDTH];
+		private ByteBuffer buf;
+
+		TextWriter(BlockOutput out, boolean weighted) {
+			this.out = out;
+			this.weighted = weighted;
+			buf = out.buffer();
+		}
+
+		@Override
+		public void write(int value, long weight) throws IOException {
+			if (buf.remaining() < 2 * MAX_TEXT_WIDTH) {
+				buf = out.flush();
+			}
+			put(value);
+			if (weighted) {
+				buf.put((byte) ' ');
+				put(weight);
+			}
+			buf.put((byte) '\n');
+		}
+
+		private void put(long v) {
+			buf.put(digits, 0, AsciiCodec.format(v, digits, 0));
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * A record might cross blocks - storage cuts them by blockSize, and a
+	 * weighted record is 12 bytes. Then its bytes are gathered in a small
+	 * buffer of their own.
+	 */
+	private static final class BinaryReader implements RunReader {
+		private final BlockInput in;
+		private final boolean weighted;
+		private final int width;
+		private final ByteBuffer gathered;
+		private ByteBuffer buf;
+		private int value;
+		private long weight = 1;
+
+		BinaryReader(BlockInput in, boolean weighted) {
+			this.in = in;
+			this.weighted = weighted;
+			width = weighted ? Integer.BYTES + Long.BYTES : Integer.BYTES;
+			gathered = ByteBuffer.allocate(width).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		@Override
+		public boolean next() throws IOException {
+			ByteBuffer b = buf;
+			if (b == null || b.remaining() < width) {
+				b = gather();
+				if (b == null) {
+					return false;
+				}
+			}
+			value = b.getInt();
+			if (weighted) {
+				weight = b.getLong();
+			}
+			return true;
+		}
+
+		private ByteBuffer gather() throws IOException {
+			gathered.clear();
+			while (gathered.hasRemaining()) {
+				if (buf == null || !buf.hasRemaining()) {
+					buf = in.next();
+					if (buf == null) {
+						if (gathered.position() != 0) {
+							throw new IOException("temp file ends in the middle of a number");
+						}
+						return null;
+					}
+					buf.order(ByteOrder.LITTLE_ENDIAN);
+					if (gathered.position() == 0 && buf.remaining() >= width) {
+						return buf;
+					}
+				}
+				gathered.put(buf.get());
+			}
+			gathered.flip();
+			return gathered;
+		}
+
+		@Override
+		public int value() {
+			return value;
+		}
+
+		@Override
+		public long weight() {
+			return weight;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private static final class BinaryWriter implements RunWriter {
+		private final BlockOutput out;
+		private final boolean weighted;
+		private ByteBuffer buf;
+
+		BinaryWriter(BlockOutput out, boolean weighted) {
+			this.out = out;
+			this.weighted = weighted;
+			buf = out.buffer().order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		@Override
+		public void write(int value, long weight) throws IOException {
+			if (buf.remaining() < Integer.BYTES + Long.BYTES) {
+				buf = out.flush().order(ByteOrder.LITTLE_ENDIAN);
+			}
+			buf.putInt(value);
+			if (weighted) {
+				buf.putLong(weight);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Varint might start in one block and end in the next one.
+	 */
+	private static final class DeltaReader implements RunReader {
+		private final BlockInput in;
+		private final boolean weighted;
+		private ByteBuffer buf;
+		private int value;
+		private long weight = 1;
+		private long parsed;
+
+		DeltaReader(BlockInput in, boolean weighted) {
+			this.in = in;
+			this.weighted = weighted;
+		}
+
+		@Override
+		public boolean next() throws IOException {
+			if (!parse(true)) {
+				return false;
+			}
+			value += (int) parsed;
+			if (weighted) {
+				parse(false);
+				weight = parsed;
+			}
+			return true;
+		}
+
+		private boolean parse(boolean first) throws IOException {
+			long zigzag = 0;
+			int shift = 0;
+			while (true) {
+				if (buf == null || !buf.hasRemaining()) {
+					buf = in.next();
+					if (buf == null) {
+						if (shift != 0 || !first) {
+							throw new IOException("temp file ends in the middle of a number");
+						}
+						return false;
+					}
+				}
+				byte b = buf.get();
+				zigzag |= (long) (b & 0x7f) << shift;
+				if (b >= 0) break;
+				shift += 7;
+			}
+			parsed = (zigzag >>> 1) ^ -(zigzag & 1);
+			return true;
+		}
+
+		@Override
+		public int value() {
+			return value;
+		}
+
+		@Override
+		public long weight() {
+			return weight;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private static final class DeltaWriter implements RunWriter {
+		private final BlockOutput out;
+		private final boolean weighted;
+		private ByteBuffer buf;
+		private int prev;
+
+		DeltaWriter(BlockOutput out, boolean weighted) {
+			this.out = out;
+			this.weighted = weighted;
+			buf = out.buffer();
+		}
+
+		@Override
+		public void write(int value, long weight) throws IOException {
+			if (buf.remaining() < 2 * MAX_VARINT_WIDTH) {
+				buf = out.flush();
+			}
+			put((long) value - prev);
+			if (weighted) {
+				put(weight);
+			}
+			prev = value;
+		}
+
+		private void put(long v) {
+			long zigzag = (v << 1) ^ (v >> 63);
+			while ((zigzag & ~0x7fL) != 0) {
+				buf.put((byte) ((zigzag & 0x7f) | 0x80));
+				zigzag >>>= 7;
+			}
+			buf.put((byte) zigzag);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package sorts;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential reader of a sorted run written by {@link RunWriter}.
+ */
+interface RunReader extends Closeable {
+
+	/**
+	 * @return false if there are no numbers left
+	 */
+	boolean next() throws IOException;
+
+	/**
+	 * Current number, valid after next returned true.
+	 */
+	int value();
+
+	/**
+	 * Weight of the current number - count or sum of a reduced run, 1 if the
+	 * run has no weights.
+	 */
+	long weight();
+}
@@ -0,0 +1,274 @@
+package sorts;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * How the bytes of the temp files and the result file get to and from the
+ * disk. Whatever the storage is, files are read and written in blocks of
+ * blockSize bytes, and the formats encode and decode numbers right in the
+ * blocks.
+ *
+ * STREAM - java.io file streams copying through a heap buffer.
+ * CHANNEL - FileChannel with a direct buffer, so there is no copy between the
+ * heap and the native buffer of the channel. Large blocks (MBs) are fine.
+ * MMAP - file is mapped block by block and the format works on the mapping
+ * itself, no read or write calls at all. The mappings are released by the GC,
+ * so the block size should be large enough to keep their number small.
+ *
+ * Every open file holds one block, so a merge takes about fanIn * blockSize
+ * bytes.
+ */
+public enum RunStorage {
+	STREAM {
+		@Override
+		BlockInput openInput(String name, int blockSize, long from, long to) throws IOException {
+			FileInputStream in = new FileInputStream(name);
+			in.getChannel().position(from);
+			return new StreamInput(in, blockSize, to - from);
+		}
+
+		@Override
+		BlockOutput openOutput(String name, int blockSize) throws IOException {
+			return new StreamOutput(new FileOutputStream(name), blockSize);
+		}
+	},
+	CHANNEL {
+		@Override
+		BlockInput openInput(String name, int blockSize, long from, long to) throws IOException {
+			FileChannel ch = new FileInputStream(name).getChannel();
+			ch.position(from);
+			return new ChannelInput(ch, blockSize, to - from);
+		}
+
+		@Override
+		BlockOutput openOutput(String name, int blockSize) throws IOException {
+			return new ChannelOutput(new FileOutputStream(name).getChannel(), blockSize);
+		}
+	},
+	MMAP {
+		@Override
+		BlockInput openInput(String name, int blockSize, long from, long to) throws IOException {
+			return new MappedInput(new FileInputStream(name).getChannel(), blockSize, from, to);
+		}
+
+		@Override
+		BlockOutput openOutput(String name, int blockSize) throws IOException {
+			RandomAccessFile f = new RandomAccessFile(name, "rw");
+			f.setLength(0);
+			return new MappedOutput(f.getChannel(), blockSize);
+		}
+	};
+
+	static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+	BlockInput openInput(String name, int blockSize) throws IOException {
+		return openInput(name, blockSize, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reads only bytes [from, to) of the file, to can be past its end.
+	 */
+	abstract BlockInput openInput(String name, int blockSize, long from, long to) throws IOException;
+
+	abstract BlockOutput openOutput(String name, int blockSize) throws IOException;
+
+	/**************************************************************************/
+
+	private static final class StreamInput implements BlockInput {
+		private final FileInputStream in;
+		private final ByteBuffer buf;
+		private long left;
+
+		StreamInput(FileInputStream in, int blockSize, long left) {
+			this.in = in;
+			this.left = left;
+			buf = ByteBuffer.allocate(blockSize);
+		}
+
+		@Override
+		public ByteBuffer next() throws IOException {
+			byte[] a = buf.array();
+			int want = (int) Math.min(a.length, left);
+			int size = 0;
+			while (size < want) {
+				int read = in.read(a, size, want - size);
+				if (read < 0) break;
+				size += read;
+			}
+			left -= size;
+			if (size == 0) {
+				return null;
+			}
+			buf.clear();
+			buf.limit(size);
+			return buf;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private static final class StreamOutput implements BlockOutput {
+		private final FileOutputStream out;
+		private final ByteBuffer buf;
+
+		StreamOutput(FileOutputStream out, int blockSize) {
+			this.out = out;
+			buf = ByteBuffer.allocate(blockSize);
+		}
+
+		@Override
+		public ByteBuffer buffer() {
+			return buf;
+		}
+
+		@Override
+		public ByteBuffer flush() throws IOException {
+			out.write(buf.array(), 0, buf.position());
+			buf.clear();
+			return buf;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+			out.close();
+		}
+	}
+
+	private static final class ChannelInput implements BlockInput {
+		private final FileChannel ch;
+		private final ByteBuffer buf;
+		private long left;
+
+		ChannelInput(FileChannel ch, int blockSize, long left) {
+			this.ch = ch;
+			this.left = left;
+			buf = ByteBuffer.allocateDirect(blockSize);
+		}
+
+		@Override
+		public ByteBuffer next() throws IOException {
+			buf.clear();
+			buf.limit((int) Math.min(buf.capacity(), left));
+			// channel might give less than asked, fill the whole block
+			while (buf.hasRemaining()) {
+				if (ch.read(buf) < 0) break;
+			}
+			buf.flip();
+			left -= buf.remaining();
+			return buf.hasRemaining() ? buf : null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			ch.close();
+		}
+	}
+
+	private static final class ChannelOutput implements BlockOutput {
+		private final FileChannel ch;
+		private final ByteBuffer buf;
+
+		ChannelOutput(FileChannel ch, int blockSize) {
+			this.ch = ch;
+			buf = ByteBuffer.allocateDirect(blockSize);
+		}
+
+		@Override
+		public ByteBuffer buffer() {
+			return buf;
+		}
+
+		@Override
+		public ByteBuffer flush() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+			buf.clear();
+			return buf;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+			ch.close();
+		}
+	}
+
+	private static final class MappedInput implements BlockInput {
+		private final FileChannel ch;
+		private final int blockSize;
+		private final long end;
+		private long pos;
+
+		MappedInput(FileChannel ch, int blockSize, long from, long to) throws IOException {
+			this.ch = ch;
+			this.blockSize = blockSize;
+			end = Math.min(to, ch.size());
+			pos = Math.min(from, end);
+		}
+
+		@Override
+		public ByteBuffer next() throws IOException {
+			if (pos == end) {
+				return null;
+			}
+			long len = Math.min(blockSize, end - pos);
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+			pos += len;
+			return buf;
+		}
+
+		@Override
+		public void close() throws IOException {
+			ch.close();
+		}
+	}
+
+	/**
+	 * Maps the next blockSize bytes after the written ones, file grows with
+	 * every mapping, so on close it is cut to what was actually written.
+	 */
+	private static final class MappedOutput implements BlockOutput {
+		private final FileChannel ch;
+		private final int blockSize;
+		private MappedByteBuffer buf;
+		private long pos;
+
+		MappedOutput(FileChannel ch, int blockSize) throws IOException {
+			this.ch = ch;
+			this.blockSize = blockSize;
+			buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, blockSize);
+		}
+
+		@Override
+		public ByteBuffer buffer() {
+			return buf;
+		}
+
+		@Override
+		public ByteBuffer flush() throws IOException {
+			pos += buf.position();
+			buf = ch.map(FileChannel.MapMode.READ_WRITE, pos, blockSize);
+			return buf;
+		}
+
+		@Override
+		public void close() throws IOException {
+			pos += buf.position();
+			buf = null;
+			ch.truncate(pos);
+			ch.close();
+		}
+	}
+}
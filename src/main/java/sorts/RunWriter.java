@@ -0,0 +1,19 @@
+package sorts;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential writer of a run, numbers are written in the order they come.
+ */
+interface RunWriter extends Closeable {
+
+	/**
+	 * Weight is dropped if the run has no weights.
+	 */
+	void write(int value, long weight) throws IOException;
+
+	default void write(int value) throws IOException {
+		write(value, 1);
+	}
+}
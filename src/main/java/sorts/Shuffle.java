@@ -1,16 +1,49 @@
 package sorts;
 
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * The Knuth (or Fisher-Yates) shuffling algorithm guarantees to rearrange the
- * elements in uniformly random order, under the assumption that Math.random()
- * generates independent and uniformly distributed numbers between 0 and 1.
+ * elements in uniformly random order, under the assumption that the random
+ * generator gives independent and uniformly distributed numbers.
+ *
+ * Every shuffle takes a SplittableRandom or a seed, the same seed gives the
+ * same order. Without one a new SplittableRandom is made - unlike
+ * Math.random() it is not shared between threads, so nothing is
+ * synchronized per element.
+ *
+ * parallelShuffle is MergeShuffle: the array is cut in halves down to
+ * chunks of PARALLEL_CHUNK, chunks are shuffled with Fisher-Yates in
+ * parallel, then neighbours are merged - a random bit picks the half the
+ * next element comes from, and when one half runs out the rest are put at
+ * random places with Fisher-Yates steps, so the merge of two uniformly
+ * shuffled halves is uniformly shuffled too. Randoms of the halves are split
+ * before they are forked, so the order depends only on the seed and the
+ * length, not on the threads.
+ *
+ * https://arxiv.org/abs/1508.03167
  */
 public class Shuffle {
+
+	private static final int PARALLEL_CHUNK = 1 << 16;
+
 	public static void shuffleArray(Object[] a) {
+		shuffleArray(a, new SplittableRandom());
+	}
+
+	public static void shuffleArray(Object[] a, long seed) {
+		shuffleArray(a, new SplittableRandom(seed));
+	}
+
+	public static void shuffleArray(Object[] a, SplittableRandom random) {
 		int n = a.length;
 		for (int i = 0; i < n; i++) {
 			// choose index uniformly in [0, i]
-			int r = (int) (Math.random() * (i + 1));
+			int r = random.nextInt(i + 1);
 			Object swap = a[r];
 			a[r] = a[i];
 			a[i] = swap;
@@ -18,13 +51,279 @@ public class Shuffle {
 	}
 
 	public static void shuffleIntArray(int[] a) {
-		int n = a.length;
-		for (int i = 0; i < n; i++) {
-			// choose index uniformly in [0, i]
-			int r = (int) (Math.random() * (i + 1));
+		shuffleIntArray(a, new SplittableRandom());
+	}
+
+	public static void shuffleIntArray(int[] a, long seed) {
+		shuffleIntArray(a, new SplittableRandom(seed));
+	}
+
+	public static void shuffleIntArray(int[] a, SplittableRandom random) {
+		shuffle(a, 0, a.length, random);
+	}
+
+	public static void shuffleLongArray(long[] a) {
+		shuffleLongArray(a, new SplittableRandom());
+	}
+
+	public static void shuffleLongArray(long[] a, long seed) {
+		shuffleLongArray(a, new SplittableRandom(seed));
+	}
+
+	public static void shuffleLongArray(long[] a, SplittableRandom random) {
+		shuffle(a, 0, a.length, random);
+	}
+
+	public static void parallelShuffle(int[] a, long seed) {
+		parallelShuffle(a, new SplittableRandom(seed), ForkJoinPool.commonPool());
+	}
+
+	public static void parallelShuffle(int[] a, SplittableRandom random, ForkJoinPool pool) {
+		pool.invoke(new IntMergeShuffle(a, 0, a.length, random));
+	}
+
+	public static void parallelShuffle(long[] a, long seed) {
+		parallelShuffle(a, new SplittableRandom(seed), ForkJoinPool.commonPool());
+	}
+
+	public static void parallelShuffle(long[] a, SplittableRandom random, ForkJoinPool pool) {
+		pool.invoke(new LongMergeShuffle(a, 0, a.length, random));
+	}
+
+	/**
+	 * Random permutation of [0, n), made one number at a time - nothing of
+	 * size n is allocated.
+	 *
+	 * The numbers are a Feistel network - 4 rounds with random keys - over
+	 * the smallest domain of 2^(2k) numbers that holds n, encrypting a
+	 * counter. It is a bijection of the domain, numbers of n or more are
+	 * encrypted again until they fall into [0, n) (cycle walking, under 4
+	 * times on average), so it stays a bijection of [0, n). Not every
+	 * permutation is equally likely as with Fisher-Yates, but the order
+	 * looks random enough to sample or to visit in random order.
+	 */
+	public static PrimitiveIterator.OfInt permutation(int n, long seed) {
+		return permutation(n, new SplittableRandom(seed));
+	}
+
+	public static PrimitiveIterator.OfInt permutation(int n, SplittableRandom random) {
+		if (n < 0) {
+			throw new IllegalArgumentException("n should not be negative");
+		}
+		return new Permutation(n, random);
+	}
+
+	/**************************************************************************/
+
+	private static void shuffle(int[] a, int from, int to, SplittableRandom random) {
+		for (int i = from; i < to; i++) {
+			int r = from + random.nextInt(i - from + 1);
 			int swap = a[r];
 			a[r] = a[i];
 			a[i] = swap;
 		}
 	}
+
+	private static void shuffle(long[] a, int from, int to, SplittableRandom random) {
+		for (int i = from; i < to; i++) {
+			int r = from + random.nextInt(i - from + 1);
+			long swap = a[r];
+			a[r] = a[i];
+			a[i] = swap;
+		}
+	}
+
+	/**
+	 * Random bits, 64 from one nextLong.
+	 */
+	private static final class Bits {
+		private final SplittableRandom random;
+		private long bits;
+		private int left;
+
+		Bits(SplittableRandom random) {
+			this.random = random;
+		}
+
+		boolean next() {
+			if (left == 0) {
+				bits = random.nextLong();
+				left = Long.SIZE;
+			}
+			left--;
+			boolean bit = (bits & 1) != 0;
+			bits >>>= 1;
+			return bit;
+		}
+	}
+
+	private static final class IntMergeShuffle extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] a;
+		private final int from;
+		private final int to;
+		private final SplittableRandom random;
+
+		IntMergeShuffle(int[] a, int from, int to, SplittableRandom random) {
+			this.a = a;
+			this.from = from;
+			this.to = to;
+			this.random = random;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK) {
+				shuffle(a, from, to, random);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			SplittableRandom left = random.split();
+			SplittableRandom right = random.split();
+			invokeAll(new IntMergeShuffle(a, from, mid, left), new IntMergeShuffle(a, mid, to, right));
+			merge(mid);
+		}
+
+		/**
+		 * a[from, mid) and a[mid, to) are shuffled, a[from, i) is the merged
+		 * part, a[i, j) is what is left of the left half, a[j, to) of the
+		 * right.
+		 */
+		private void merge(int mid) {
+			Bits bits = new Bits(random);
+			int i = from;
+			int j = mid;
+			while (true) {
+				if (bits.next()) {
+					if (j == to) break;
+					int swap = a[i];
+					a[i] = a[j];
+					a[j++] = swap;
+				} else if (i == j) {
+					break;
+				}
+				i++;
+			}
+			for (; i < to; i++) {
+				int r = from + random.nextInt(i - from + 1);
+				int swap = a[r];
+				a[r] = a[i];
+				a[i] = swap;
+			}
+		}
+	}
+
+	private static final class LongMergeShuffle extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final long[] a;
+		private final int from;
+		private final int to;
+		private final SplittableRandom random;
+
+		LongMergeShuffle(long[] a, int from, int to, SplittableRandom random) {
+			this.a = a;
+			this.from = from;
+			this.to = to;
+			this.random = random;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK) {
+				shuffle(a, from, to, random);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			SplittableRandom left = random.split();
+			SplittableRandom right = random.split();
+			invokeAll(new LongMergeShuffle(a, from, mid, left), new LongMergeShuffle(a, mid, to, right));
+			merge(mid);
+		}
+
+		private void merge(int mid) {
+			Bits bits = new Bits(random);
+			int i = from;
+			int j = mid;
+			while (true) {
+				if (bits.next()) {
+					if (j == to) break;
+					long swap = a[i];
+					a[i] = a[j];
+					a[j++] = swap;
+				} else if (i == j) {
+					break;
+				}
+				i++;
+			}
+			for (; i < to; i++) {
+				int r = from + random.nextInt(i - from + 1);
+				long swap = a[r];
+				a[r] = a[i];
+				a[i] = swap;
+			}
+		}
+	}
+
+	private static final class Permutation implements PrimitiveIterator.OfInt {
+		private static final int ROUNDS = 4;
+
+		private final int n;
+		private final int half; // bits in a half of a number of the domain
+		private final int mask;
+		private final int[] keys = new int[ROUNDS];
+		private int next;
+
+		Permutation(int n, SplittableRandom random) {
+			this.n = n;
+			int bits = Math.max(2, 32 - Integer.numberOfLeadingZeros(Math.max(n - 1, 1)));
+			this.half = (bits + 1) / 2;
+			this.mask = (1 << half) - 1;
+			for (int r = 0; r < ROUNDS; r++) {
+				keys[r] = random.nextInt();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < n;
+		}
+
+		@Override
+		public int nextInt() {
+			if (next >= n) {
+				throw new NoSuchElementException();
+			}
+			long x = next++;
+			do {
+				x = encrypt(x);
+			} while (x >= n);
+			return (int) x;
+		}
+
+		private long encrypt(long x) {
+			int l = (int) (x >>> half);
+			int r = (int) x & mask;
+			for (int k : keys) {
+				int t = l ^ round(r, k);
+				l = r;
+				r = t;
+			}
+			return (long) l << half | r;
+		}
+
+		/**
+		 * Mixes the half with the key, murmur3 finalizer.
+		 */
+		private int round(int r, int key) {
+			int h = r ^ key;
+			h ^= h >>> 16;
+			h *= 0x85ebca6b;
+			h ^= h >>> 13;
+			h *= 0xc2b2ae35;
+			h ^= h >>> 16;
+			return h & mask;
+		}
+	}
 }
@@ -0,0 +1,75 @@
+package sorts;
+
+import java.util.List;
+
+/**
+ * Callbacks of an ExternalSort, every method does nothing by default.
+ *
+ * Calls come on the thread doing the work - runCreated comes from the
+ * writer thread when runs are generated with threads > 1 - so a listener
+ * should be quick and thread safe.
+ */
+public interface SortListener {
+
+	SortListener NONE = new SortListener() {
+	};
+
+	default void phaseStarted(SortMetrics.Phase phase) {
+	}
+
+	/**
+	 * @param metrics counters of the whole sort so far
+	 */
+	default void phaseFinished(SortMetrics.Phase phase, SortMetrics metrics) {
+	}
+
+	/**
+	 * @param records numbers written to the run
+	 */
+	default void runCreated(String name, long records) {
+	}
+
+	/**
+	 * Fan-in of the merge is names.size().
+	 */
+	default void mergeStarted(List<String> names, String newName) {
+	}
+
+	/**
+	 * Sort goes on from a manifest.
+	 */
+	default void resumed(int runs, int merges) {
+	}
+
+	/**
+	 * Prints every event to System.out, what ExternalSort used to print.
+	 */
+	static SortListener console() {
+		return new SortListener() {
+			@Override
+			public void phaseStarted(SortMetrics.Phase phase) {
+				System.out.println("[" + phase + "] start");
+			}
+
+			@Override
+			public void phaseFinished(SortMetrics.Phase phase, SortMetrics metrics) {
+				System.out.println("[" + phase + "] end, " + metrics.nanos(phase) / 1_000_000 + " ms");
+			}
+
+			@Override
+			public void runCreated(String name, long records) {
+				System.out.println("created " + name + ", records: " + records);
+			}
+
+			@Override
+			public void mergeStarted(List<String> names, String newName) {
+				System.out.println("merging " + names + " into " + newName);
+			}
+
+			@Override
+			public void resumed(int runs, int merges) {
+				System.out.println("resuming after " + runs + " runs and " + merges + " merges");
+			}
+		};
+	}
+}
@@ -0,0 +1,135 @@
+package sorts;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of an ExternalSort, per phase where it makes sense. Counters are
+ * added up per run and per merge, not per record, so they cost nothing on
+ * the hot loops, and they can be read while the sort goes.
+ *
+ * Records are what goes into the run and merge writers, before the reducer
+ * collapses them. Bytes are the sizes of the files - the input lines in
+ * SPLIT, the temp and result files after that, so they are
+ * compressed bytes if the runs are compressed. Compares are those of the
+ * merge heaps, sorting the run buffers is not counted.
+ */
+public final class SortMetrics {
+
+	public enum Phase {
+		SPLIT,
+		MERGE
+	}
+
+	private static final int PHASES = Phase.values().length;
+
+	private final AtomicLongArray recordsRead = new AtomicLongArray(PHASES);
+	private final AtomicLongArray recordsWritten = new AtomicLongArray(PHASES);
+	private final AtomicLongArray bytesRead = new AtomicLongArray(PHASES);
+	private final AtomicLongArray bytesWritten = new AtomicLongArray(PHASES);
+	private final AtomicLongArray nanos = new AtomicLongArray(PHASES);
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong merges = new AtomicLong();
+	private final AtomicLong mergedFiles = new AtomicLong();
+	private final AtomicLong maxFanIn = new AtomicLong();
+	private final AtomicLong compares = new AtomicLong();
+
+	void read(Phase phase, long records, long bytes) {
+		recordsRead.addAndGet(phase.ordinal(), records);
+		bytesRead.addAndGet(phase.ordinal(), bytes);
+	}
+
+	void written(Phase phase, long records, long bytes) {
+		recordsWritten.addAndGet(phase.ordinal(), records);
+		bytesWritten.addAndGet(phase.ordinal(), bytes);
+	}
+
+	void time(Phase phase, long nanos) {
+		this.nanos.addAndGet(phase.ordinal(), nanos);
+	}
+
+	void run() {
+		runs.incrementAndGet();
+	}
+
+	void merge(int fanIn) {
+		merges.incrementAndGet();
+		mergedFiles.addAndGet(fanIn);
+		maxFanIn.accumulateAndGet(fanIn, Math::max);
+	}
+
+	void compares(long n) {
+		compares.addAndGet(n);
+	}
+
+	public long recordsRead(Phase phase) {
+		return recordsRead.get(phase.ordinal());
+	}
+
+	public long recordsWritten(Phase phase) {
+		return recordsWritten.get(phase.ordinal());
+	}
+
+	public long bytesRead(Phase phase) {
+		return bytesRead.get(phase.ordinal());
+	}
+
+	public long bytesWritten(Phase phase) {
+		return bytesWritten.get(phase.ordinal());
+	}
+
+	/**
+	 * Wall time of the phase, summed over the times it ran.
+	 */
+	public long nanos(Phase phase) {
+		return nanos.get(phase.ordinal());
+	}
+
+	/**
+	 * Runs written by this sort, a resumed sort does not count the recorded
+	 * ones.
+	 */
+	public long runs() {
+		return runs.get();
+	}
+
+	/**
+	 * Merges done, the last one of iterator included.
+	 */
+	public long merges() {
+		return merges.get();
+	}
+
+	/**
+	 * Average number of files per merge.
+	 */
+	public double averageFanIn() {
+		long m = merges.get();
+		return m == 0 ? 0 : (double) mergedFiles.get() / m;
+	}
+
+	public long maxFanIn() {
+		return maxFanIn.get();
+	}
+
+	public long compares() {
+		return compares.get();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Phase p : Phase.values()) {
+			if (nanos(p) == 0 && recordsRead(p) == 0) continue;
+			sb.append(p)
+					.append(": read ").append(recordsRead(p)).append(" records / ").append(bytesRead(p)).append(" bytes")
+					.append(", written ").append(recordsWritten(p)).append(" records / ").append(bytesWritten(p)).append(" bytes")
+					.append(", ").append(nanos(p) / 1_000_000).append(" ms\n");
+		}
+		return sb.append("runs: ").append(runs())
+				.append(", merges: ").append(merges())
+				.append(", fanIn: ").append(String.format("%.1f", averageFanIn())).append(" avg / ").append(maxFanIn()).append(" max")
+				.append(", compares: ").append(compares())
+				.toString();
+	}
+}
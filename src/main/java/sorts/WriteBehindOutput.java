@@ -0,0 +1,140 @@
+package sorts;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Write-behind over a BlockOutput. A flushed buffer is queued for the io
+ * executor and the caller continues with the next free one right away. Up to
+ * depth full buffers wait to be written, after that flush blocks until the
+ * disk catches up.
+ *
+ * Same as in PrefetchInput, at most one write task per output is in flight,
+ * so the blocks reach the file in order.
+ */
+final class WriteBehindOutput implements BlockOutput {
+	private final BlockOutput out;
+	private final Executor io;
+	private final BlockingQueue<ByteBuffer> free;
+	private final BlockingQueue<ByteBuffer> full;
+	private ByteBuffer current;
+	private boolean writing; // guarded by this
+	private volatile IOException error;
+
+	WriteBehindOutput(BlockOutput out, Executor io, int depth, int blockSize) {
+		this.out = out;
+		this.io = io;
+		free = new ArrayBlockingQueue<>(depth + 1);
+		full = new ArrayBlockingQueue<>(depth + 1);
+		for (int i = 0; i < depth; i++) {
+			free.add(ByteBuffer.allocate(blockSize));
+		}
+		current = ByteBuffer.allocate(blockSize);
+	}
+
+	@Override
+	public ByteBuffer buffer() {
+		return current;
+	}
+
+	@Override
+	public ByteBuffer flush() throws IOException {
+		if (error != null) {
+			throw error;
+		}
+		current.flip();
+		full.add(current);
+		schedule();
+		try {
+			current = free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a free block");
+		}
+		current.clear();
+		return current;
+	}
+
+	private synchronized void schedule() {
+		if (!writing && !full.isEmpty()) {
+			writing = true;
+			io.execute(this::drain);
+		}
+	}
+
+	private void drain() {
+		ByteBuffer b;
+		while ((b = full.poll()) != null) {
+			try {
+				if (error == null) {
+					ByteBuffer target = out.buffer();
+					target.put(b);
+					out.flush();
+				}
+			} catch (IOException e) {
+				error = e;
+			}
+			free.add(b);
+		}
+		synchronized (this) {
+			writing = false;
+			notifyAll();
+		}
+		schedule();
+	}
+
+	/**
+	 * Waits for the queued writes and closes the output even if a write
+	 * failed. The first error is thrown, the later ones are suppressed in it.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		try {
+			flush();
+		} catch (IOException e) {
+			failure = e;
+		}
+		try {
+			awaitWrites();
+		} catch (IOException e) {
+			failure = first(failure, e);
+		}
+		if (error != null) {
+			failure = first(failure, error); // of the last writes
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			failure = first(failure, e);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private synchronized void awaitWrites() throws IOException {
+		while (writing || !full.isEmpty()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for the writes");
+			}
+		}
+	}
+
+	private static IOException first(IOException first, IOException next) {
+		if (first == null) {
+			return next;
+		}
+		if (first != next) {
+			first.addSuppressed(next);
+		}
+		return first;
+	}
+}
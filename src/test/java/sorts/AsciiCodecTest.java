@@ -0,0 +1,52 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsciiCodecTest {
+
+	@Test
+	void format_and_parse_random_1M() {
+		Random random = new Random(1);
+		byte[] b = new byte[AsciiCodec.MAX_LONG_WIDTH + 1];
+		for (int i = 0; i < 1_000_000; i++) {
+			long v = i % 2 == 0 ? random.nextLong() : random.nextInt(2001) - 1000;
+			int end = AsciiCodec.format(v, b, 1);
+			assertEquals(Long.toString(v), new String(b, 1, end - 1, StandardCharsets.US_ASCII));
+			assertEquals(v, AsciiCodec.parseLong(b, 1, end));
+		}
+	}
+
+	@Test
+	void limits() {
+		for (long v : new long[]{Long.MIN_VALUE, Long.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1}) {
+			byte[] b = new byte[AsciiCodec.MAX_LONG_WIDTH];
+			int end = AsciiCodec.format(v, b, 0);
+			assertEquals(Long.toString(v), new String(b, 0, end, StandardCharsets.US_ASCII));
+			assertEquals(v, AsciiCodec.parseLong(b, 0, end));
+		}
+		assertEquals(Integer.MIN_VALUE, parseInt("-2147483648"));
+		assertEquals(42, parseInt("+42"));
+	}
+
+	@Test
+	void not_a_number() {
+		for (String s : new String[]{"", "-", "+", "1a", " 1", "2147483648", "-2147483649", "1-"}) {
+			assertThrows(NumberFormatException.class, () -> parseInt(s));
+		}
+		for (String s : new String[]{"9223372036854775808", "-9223372036854775809", "99999999999999999999"}) {
+			byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+			assertThrows(NumberFormatException.class, () -> AsciiCodec.parseLong(b, 0, b.length));
+		}
+	}
+
+	private static int parseInt(String s) {
+		byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+		return AsciiCodec.parseInt(b, 0, b.length);
+	}
+}
@@ -0,0 +1,154 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static reader.IOUtils.createReader;
+import static reader.IOUtils.createWriter;
+import static reader.IOUtils.removeFile;
+import static sorts.ExternalRecordSort.column;
+
+class ExternalRecordSortTest {
+
+	/**
+	 * "id,name,amount" lines sorted by the amount column. The prefix of a
+	 * long is the long itself, so the comparator is never called.
+	 */
+	@Test
+	void longColumn_limit_1K_total_100K() throws IOException {
+		String inputFileName = "records_100K.csv";
+		List<String> lines = generateRecords(inputFileName, 100_000, 1_000);
+
+		Function<String, Long> amount = column(2, ',').andThen(Long::parseLong);
+		ExternalRecordSort<Long> e = ExternalRecordSort.builder(inputFileName, amount, Comparator.<Long>naturalOrder())
+				.prefix(KeyPrefix.ofLong())
+				.limit(1_000)
+				.fanIn(8)
+				.build();
+		String resultFileName = e.sort();
+
+		lines.sort(Comparator.comparing(amount));
+		assertEquals(lines, readLines(resultFileName));
+		assertEquals(0, e.comparisons());
+
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Same records by name descending and then by id - the prefix is only
+	 * the start of the name, ties go to the comparator.
+	 */
+	@Test
+	void compositeKey_budget_64KB_total_100K() throws IOException {
+		String inputFileName = "records_100K.csv";
+		List<String> lines = generateRecords(inputFileName, 100_000, 100_000);
+
+		Function<String, String> name = column(1, ',');
+		Comparator<String> order = Comparator.comparing(name, Comparator.<String>reverseOrder())
+				.thenComparing(column(0, ',').andThen(Integer::parseInt));
+		ExternalRecordSort<String> e = ExternalRecordSort.builder(inputFileName, Function.identity(), order)
+				.prefix(line -> KeyPrefix.ofString().reversed().of(name.apply(line)))
+				.memoryBudget(64 << 10)
+				.fanIn(16)
+				.build();
+		String resultFileName = e.sort();
+
+		lines.sort(order);
+		assertEquals(lines, readLines(resultFileName));
+		assertTrue(e.comparisons() > 0);
+
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * No prefix, equal keys keep the input order.
+	 */
+	@Test
+	void stable_noPrefix_limit_100_total_10K() throws IOException {
+		String inputFileName = "records_10K.csv";
+		List<String> lines = generateRecords(inputFileName, 10_000, 10);
+
+		Function<String, String> amount = column(2, ',');
+		ExternalRecordSort<String> e = ExternalRecordSort.builder(inputFileName, amount, Comparator.<String>naturalOrder())
+				.limit(100)
+				.build();
+		String resultFileName = e.sort();
+
+		lines.sort(Comparator.comparing(amount));
+		assertEquals(lines, readLines(resultFileName));
+
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Runs go to a temp directory of their own inside tempDir, nothing is
+	 * left there after the sort.
+	 */
+	@Test
+	void tempDir_isEmptyAfterSort_limit_100_total_10K() throws IOException {
+		String inputFileName = "records_10K.csv";
+		String tempDir = "records_tmp";
+		List<String> lines = generateRecords(inputFileName, 10_000, 1_000);
+
+		Function<String, Long> amount = column(2, ',').andThen(Long::parseLong);
+		ExternalRecordSort<Long> e = ExternalRecordSort.builder(inputFileName, amount, Comparator.<Long>naturalOrder())
+				.prefix(KeyPrefix.ofLong())
+				.limit(100)
+				.fanIn(4)
+				.tempDir(tempDir)
+				.build();
+		String resultFileName = e.sort();
+
+		lines.sort(Comparator.comparing(amount));
+		assertEquals(lines, readLines(resultFileName));
+		assertEquals(0, new File(tempDir).list().length);
+
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+		Files.deleteIfExists(Paths.get(tempDir));
+	}
+
+	private static List<String> generateRecords(String fileName, int n, int bound) throws IOException {
+		Random random = new Random(n);
+		List<String> lines = new ArrayList<>(n);
+		try (BufferedWriter w = createWriter(fileName)) {
+			for (int i = 0; i < n; i++) {
+				StringBuilder name = new StringBuilder();
+				for (int j = random.nextInt(8); j >= 0; j--) {
+					name.append((char) ('a' + random.nextInt(3)));
+				}
+				String line = i + "," + name + "," + (random.nextInt(bound) - bound / 2);
+				lines.add(line);
+				w.write(line);
+				w.newLine();
+			}
+		}
+		return lines;
+	}
+
+	private static List<String> readLines(String fileName) throws IOException {
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader r = createReader(fileName)) {
+			for (String line = r.readLine(); line != null; line = r.readLine()) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+}
@@ -5,15 +5,28 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.stream.IntStream;
 
 import static generators.FileGenerator.generateFileWithNumbers;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static reader.IOUtils.createReader;
+import static reader.IOUtils.createWriter;
 import static reader.IOUtils.removeFile;
 
 class ExternalSortTest {
@@ -149,6 +162,1024 @@ class ExternalSortTest {
 		removeFile(resultFileName);
 	}
 
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Limit each temp file by 10_000 lines, merge 16 files at a time.
+	 * Total number in input file is 1M.
+	 */
+	@Test
+	void limit_10K_fanIn_16_total_1M() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_1M.txt";
+		int n = 1_000_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		// sort
+		int limit = 10_000;
+		int fanIn = 16;
+		System.out.println("limit: " + limit + ", fanIn: " + fanIn);
+
+		ExternalSort e = new ExternalSort(inputFileName, limit, fanIn);
+		String resultFileName = e.sort();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Limit each temp file by 64KB of run buffer - 16K numbers.
+	 * Total number in input file is 1M.
+	 */
+	@Test
+	void budget_64KB_total_1M() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_1M.txt";
+		int n = 1_000_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		// sort
+		long budget = 64 * 1024;
+		System.out.println("budget: " + budget);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.memoryBudget(budget)
+				.fanIn(64)
+				.build();
+		String resultFileName = e.sort();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Runs are sorted by 4 threads with 6 buffers in flight.
+	 * Total number in input file is 1M.
+	 */
+	@Test
+	void parallel_limit_10K_total_1M() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_1M.txt";
+		int n = 1_000_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		// sort
+		int limit = 10_000;
+		System.out.println("limit: " + limit);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(limit)
+				.fanIn(16)
+				.threads(4)
+				.buffers(6)
+				.build();
+		String resultFileName = e.sort();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Temp files are binary, result is text.
+	 * Total number in input file is 1M.
+	 */
+	@Test
+	void binaryRuns_limit_10K_total_1M() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_1M.txt";
+		int n = 1_000_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		// sort
+		int limit = 10_000;
+		System.out.println("limit: " + limit);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(limit)
+				.fanIn(16)
+				.runFormat(RunFormat.BINARY)
+				.build();
+		String resultFileName = e.sort();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Input fits into one run, result is binary.
+	 * Total number in input file is 1K.
+	 */
+	@Test
+	void binaryOutput_singleRun_total_1K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_1K.txt";
+		int n = 1_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(n)
+				.outputFormat(RunFormat.BINARY)
+				.build();
+		String resultFileName = e.sort();
+
+		// checks
+		RunReader rr = RunFormat.BINARY.reader(RunStorage.STREAM.openInput(resultFileName, 1 << 16), false);
+		int count = 0;
+		int prev = Integer.MIN_VALUE;
+		while (rr.next()) {
+			assertTrue(prev <= rr.value());
+			prev = rr.value();
+			count++;
+		}
+		rr.close();
+		assertEquals(n, count);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Every storage with text and binary temp files and a block size that
+	 * does not divide the text lines.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void storages_limit_1K_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		for (RunStorage storage : RunStorage.values()) {
+			for (RunFormat format : RunFormat.values()) {
+				System.out.println("storage: " + storage + ", format: " + format);
+
+				ExternalSort e = ExternalSort.builder(inputFileName)
+						.limit(1_000)
+						.fanIn(8)
+						.runFormat(format)
+						.storage(storage)
+						.blockSize(4_100)
+						.build();
+				String resultFileName = e.sort();
+
+				// checks
+				performChecks(inputFileName, resultFileName, e);
+				removeFile(resultFileName);
+			}
+		}
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Merge with 2 blocks read ahead and written behind, for every storage.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void prefetch_limit_1K_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		for (RunStorage storage : RunStorage.values()) {
+			System.out.println("storage: " + storage);
+
+			ExternalSort e = ExternalSort.builder(inputFileName)
+					.limit(1_000)
+					.fanIn(8)
+					.storage(storage)
+					.blockSize(1_024)
+					.prefetch(2)
+					.build();
+			String resultFileName = e.sort();
+
+			// checks
+			performChecks(inputFileName, resultFileName, e);
+			removeFile(resultFileName);
+		}
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Runs by replacement selection, limit 10_000 numbers in the heap.
+	 * Total number in input file is 1M.
+	 */
+	@Test
+	void replacementSelection_limit_10K_total_1M() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_1M.txt";
+		int n = 1_000_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(10_000)
+				.fanIn(16)
+				.replacementSelection(true)
+				.build();
+		String resultFileName = e.sort();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Runs by replacement selection with threads set - the heap still gets
+	 * the whole memory budget, so there are as many runs as without threads.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void replacementSelection_threads_memoryBudget_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+
+		long[] runs = new long[2];
+		int[] threads = {1, 4};
+		for (int i = 0; i < threads.length; i++) {
+			ExternalSort e = ExternalSort.builder(inputFileName)
+					.memoryBudget(40_000)
+					.threads(threads[i])
+					.replacementSelection(true)
+					.build();
+			String resultFileName = e.sort();
+
+			// checks
+			performChecks(inputFileName, resultFileName, e);
+			runs[i] = e.metrics().runs();
+			removeFile(resultFileName);
+		}
+		assertEquals(runs[0], runs[1]);
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Runs by replacement selection, input is sorted except for every 100th
+	 * number, which is a bit out of place - it all goes into a single run.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void replacementSelection_nearlySorted_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "nearlySortedNumbers_100K.txt";
+		int n = 100_000; // number of items
+		BufferedWriter w = createWriter(inputFileName);
+		for (int i = 0; i < n; i++) {
+			w.write(String.valueOf(i % 100 == 0 ? i - 50 : i));
+			w.newLine();
+		}
+		w.close();
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(100)
+				.replacementSelection(true)
+				.build();
+		String resultFileName = e.sort();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+
+		// a number is at most 50 places out, the heap of 100 takes it into the
+		// current run, so there is one run instead of n / limit = 1000 batches
+		assertEquals(1, e.metrics().runs());
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Every format of temp files with and without deflate, merged with
+	 * read-ahead.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void compression_limit_1K_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		for (RunCompression compression : RunCompression.values()) {
+			for (RunFormat format : RunFormat.values()) {
+				System.out.println("compression: " + compression + ", format: " + format);
+
+				ExternalSort e = ExternalSort.builder(inputFileName)
+						.limit(1_000)
+						.fanIn(8)
+						.runFormat(format)
+						.compression(compression)
+						.blockSize(1_024)
+						.prefetch(1)
+						.build();
+				String resultFileName = e.sort();
+
+				// checks
+				performChecks(inputFileName, resultFileName, e);
+				removeFile(resultFileName);
+			}
+		}
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * A deflated run cut in the middle is an error, not a shorter run.
+	 */
+	@Test
+	void compression_truncatedRun_throws() throws IOException {
+		String runFileName = "truncatedRun";
+		int blockSize = 1_024;
+		RunWriter w = RunFormat.BINARY.writer(
+				RunCompression.DEFLATE.wrap(RunStorage.STREAM.openOutput(runFileName, blockSize), blockSize), false);
+		Random random = new Random(1);
+		for (int i = 0; i < 10_000; i++) {
+			w.write(random.nextInt());
+		}
+		w.close();
+
+		try (RandomAccessFile f = new RandomAccessFile(runFileName, "rw")) {
+			f.setLength(f.length() / 2);
+		}
+
+		RunReader r = RunFormat.BINARY.reader(
+				RunCompression.DEFLATE.wrap(RunStorage.STREAM.openInput(runFileName, blockSize), blockSize), false);
+		IOException e = assertThrows(IOException.class, () -> {
+			while (r.next()) {
+				r.value();
+			}
+		});
+		assertEquals("truncated temp file", e.getMessage());
+		r.close();
+
+		// cleanup
+		removeFile(runFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Numbers come from the last merge through the iterator, with more runs
+	 * than fanIn, so there are merges before it.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void iterator_limit_1K_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(1_000)
+				.fanIn(8)
+				.runFormat(RunFormat.BINARY)
+				.build();
+
+		// checks
+		Map<Integer, Integer> inputCounts = countNumbers(inputFileName);
+		int count = 0;
+		int prev = Integer.MIN_VALUE;
+		try (ExternalSort.SortedIterator it = e.iterator()) {
+			while (it.hasNext()) {
+				int cur = it.nextInt();
+				assertTrue(prev <= cur);
+				inputCounts.merge(cur, -1, Integer::sum);
+				prev = cur;
+				count++;
+			}
+		}
+		assertEquals(n, count);
+		for (int left : inputCounts.values()) {
+			assertEquals(0, left);
+		}
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * Check the stream gives the same as the sorted input.
+	 * Total number in input file is 10K.
+	 */
+	@Test
+	void stream_limit_100_total_10K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_10K.txt";
+		int n = 10_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+
+		int[] expected = new int[n];
+		BufferedReader r = createReader(inputFileName);
+		for (int i = 0; i < n; i++) {
+			expected[i] = Integer.parseInt(r.readLine());
+		}
+		r.close();
+		Arrays.sort(expected);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(100)
+				.fanIn(4)
+				.prefetch(1)
+				.build();
+		try (IntStream sorted = e.stream()) {
+			assertArrayEquals(expected, sorted.toArray());
+		}
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * Check every number comes once and with the right count.
+	 *
+	 * 100K numbers out of 1K values, so every run has duplicates.
+	 */
+	@Test
+	void count_limit_1K_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000, inputFileName);
+
+		for (RunFormat format : RunFormat.values()) {
+			System.out.println("format: " + format);
+
+			ExternalSort e = ExternalSort.builder(inputFileName)
+					.limit(1_000)
+					.fanIn(4)
+					.runFormat(format)
+					.reducer(Reducer.COUNT)
+					.build();
+			String resultFileName = e.sort();
+
+			// checks
+			Map<Integer, Integer> inputCounts = countNumbers(inputFileName);
+			BufferedReader r = createReader(resultFileName);
+			String line = r.readLine();
+			int prev = Integer.MIN_VALUE;
+			int lines = 0;
+			while (line != null) {
+				String[] parts = line.split(" ");
+				int cur = Integer.parseInt(parts[0]);
+				assertTrue(prev < cur);
+				assertEquals((long) inputCounts.get(cur), Long.parseLong(parts[1]), "wrong: " + cur);
+				prev = cur;
+				lines++;
+				line = r.readLine();
+			}
+			r.close();
+			assertEquals(inputCounts.size(), lines);
+
+			removeFile(resultFileName);
+		}
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * Check distinct numbers come once through the iterator, and sums of
+	 * "key value" lines.
+	 */
+	@Test
+	void distinct_and_sum_total_10K() throws IOException {
+
+		// generate file
+		String inputFileName = "keyValues_10K.txt";
+		int n = 10_000; // number of items
+		Random random = new Random();
+		Map<Integer, Long> sums = new HashMap<>();
+		BufferedWriter w = createWriter(inputFileName);
+		for (int i = 0; i < n; i++) {
+			int key = random.nextInt(200) - 100;
+			int value = random.nextInt(2_000) - 1_000;
+			sums.merge(key, (long) value, Long::sum);
+			w.write(key + " " + value);
+			w.newLine();
+		}
+		w.close();
+
+		// sums through the iterator
+		ExternalSort sum = ExternalSort.builder(inputFileName)
+				.limit(500)
+				.fanIn(4)
+				.reducer(Reducer.SUM)
+				.runFormat(RunFormat.DELTA)
+				.build();
+		int prev = Integer.MIN_VALUE;
+		int keys = 0;
+		try (ExternalSort.SortedIterator it = sum.iterator()) {
+			while (it.hasNext()) {
+				int key = it.nextInt();
+				assertTrue(prev < key);
+				assertEquals((long) sums.get(key), it.weight(), "wrong: " + key);
+				prev = key;
+				keys++;
+			}
+		}
+		assertEquals(sums.size(), keys);
+
+		// cleanup
+		removeFile(inputFileName);
+
+		// distinct
+		inputFileName = "randomNumbers_10K.txt";
+		generateFileWithNumbers(n, 100, inputFileName);
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(500)
+				.fanIn(4)
+				.reducer(Reducer.DISTINCT)
+				.build();
+		try (IntStream sorted = e.stream()) {
+			assertArrayEquals(countNumbers(inputFileName).keySet().stream().mapToInt(x -> x).sorted().toArray(),
+					sorted.toArray());
+		}
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * Check smallest, largest and the median against the sorted input.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void smallest_largest_quantiles_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+
+		int[] sorted = new int[n];
+		BufferedReader r = createReader(inputFileName);
+		for (int i = 0; i < n; i++) {
+			sorted[i] = Integer.parseInt(r.readLine());
+		}
+		r.close();
+		Arrays.sort(sorted);
+
+		// checks
+		int[] smallest = ExternalSort.smallest(inputFileName, 100);
+		assertArrayEquals(Arrays.copyOf(sorted, 100), smallest);
+
+		int[] largest = ExternalSort.largest(inputFileName, 100);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(sorted[n - 1 - i], largest[i]);
+		}
+
+		int median = ExternalSort.quantiles(inputFileName, 0.5)[0];
+		assertTrue(Math.abs(median - sorted[n / 2]) < 1_000_000 * 0.02);
+
+		// cleanup
+		removeFile(inputFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Last merge is split into 4 key ranges, with plain and counted runs.
+	 * Total number in input file is 1M.
+	 */
+	@Test
+	void partitionedMerge_limit_10K_total_1M() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_1M.txt";
+		int n = 1_000_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		System.out.println("total number of items: " + n);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(10_000)
+				.fanIn(16)
+				.runFormat(RunFormat.BINARY)
+				.mergeThreads(4)
+				.build();
+		String resultFileName = e.sort();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+		removeFile(resultFileName);
+
+		e = ExternalSort.builder(inputFileName)
+				.limit(10_000)
+				.fanIn(128)
+				.runFormat(RunFormat.BINARY)
+				.outputFormat(RunFormat.BINARY)
+				.reducer(Reducer.COUNT)
+				.mergeThreads(3)
+				.build();
+		resultFileName = e.sort();
+
+		long total = 0;
+		int prev = Integer.MIN_VALUE;
+		RunReader rr = RunFormat.BINARY.reader(RunStorage.STREAM.openInput(resultFileName, 1 << 16), true);
+		while (rr.next()) {
+			assertTrue(prev < rr.value());
+			prev = rr.value();
+			total += rr.weight();
+		}
+		rr.close();
+		assertEquals(n, total);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is resumed.
+	 *
+	 * Bad line in the middle of the input stops the sort after 50 runs, the
+	 * sort is resumed on the fixed input and does not write them again.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void resume_limit_1K_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+		List<String> lines = new ArrayList<>(n);
+		try (BufferedReader r = createReader(inputFileName)) {
+			for (String line = r.readLine(); line != null; line = r.readLine()) {
+				lines.add(line);
+			}
+		}
+		writeLines(inputFileName, lines, 50_500, "oops");
+
+		String manifest = "sort.manifest";
+		ExternalSort.Builder b = ExternalSort.builder(inputFileName)
+				.limit(1_000)
+				.fanIn(8)
+				.tempDirs("tmp0", "tmp1")
+				.manifest(manifest);
+		assertThrows(NumberFormatException.class, () -> b.build().sort());
+		assertEquals(50, Files.readAllLines(Paths.get(manifest)).stream().filter(l -> l.startsWith("run\t")).count());
+		assertTrue(new File("tmp1", "49t").exists());
+
+		// fix the input and go on
+		writeLines(inputFileName, lines, -1, null);
+		ExternalSort e = b.build();
+		String resultFileName = e.resume();
+		assertEquals(100, Files.readAllLines(Paths.get(manifest)).stream().filter(l -> l.startsWith("run\t")).count());
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+
+		// finished sort is not sorted again
+		assertEquals(resultFileName, b.build().resume());
+		assertThrows(IllegalStateException.class, () -> b.fanIn(4).build().resume());
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+		removeFile(manifest);
+		assertEquals(0, new File("tmp0").list().length + new File("tmp1").list().length);
+		removeFile("tmp0");
+		removeFile("tmp1");
+	}
+
+	/**
+	 * Check if it is resumed.
+	 *
+	 * Runs by replacement selection are recorded only when all of them are
+	 * written, and in one manifest line. A crash after a few runs records
+	 * nothing, and a cut "runs" line does not count, so resume never skips
+	 * input that is not in the recorded runs.
+	 * Total number in input file is 20K.
+	 */
+	@Test
+	void resume_replacementSelection_limit_1K_total_20K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_20K.txt";
+		int n = 20_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+
+		String manifest = "sort.manifest";
+		ExternalSort.Builder b = ExternalSort.builder(inputFileName)
+				.limit(1_000)
+				.fanIn(4)
+				.replacementSelection(true)
+				.manifest(manifest);
+
+		// crash after the second run is written
+		int[] runs = new int[1];
+		b.listener(new SortListener() {
+			@Override
+			public void runCreated(String name, long records) {
+				if (++runs[0] == 2) throw new IllegalStateException("crash");
+			}
+		});
+		assertThrows(IllegalStateException.class, () -> b.build().sort());
+		assertEquals(1, Files.readAllLines(Paths.get(manifest)).size());
+
+		b.listener(SortListener.NONE);
+		ExternalSort e = b.build();
+		String resultFileName = e.resume();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+		List<String> steps = Files.readAllLines(Paths.get(manifest));
+		assertEquals(1, steps.stream().filter(l -> l.startsWith("runs\t")).count());
+
+		// crash in the middle of the "runs" line
+		String runsLine = steps.stream().filter(l -> l.startsWith("runs\t")).findFirst().get();
+		Files.write(Paths.get(manifest), (steps.get(0) + "\n" + runsLine.substring(0, runsLine.length() / 2)).getBytes());
+		e = b.build();
+		resultFileName = e.resume();
+		performChecks(inputFileName, resultFileName, e);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+		removeFile(manifest);
+	}
+
+	/**
+	 * Check if it is resumed.
+	 *
+	 * Second run of the pipeline can not be written - there is a directory
+	 * with its name. The runs after it are neither written nor recorded, so
+	 * resume goes on right after the first run.
+	 * Total number in input file is 20K.
+	 */
+	@Test
+	void resume_failedWrite_threads_2_limit_1K_total_20K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_20K.txt";
+		int n = 20_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+
+		String manifest = "sort.manifest";
+		ExternalSort.Builder b = ExternalSort.builder(inputFileName)
+				.limit(1_000)
+				.fanIn(8)
+				.threads(2)
+				.tempDirs("tmp0", "tmp1")
+				.manifest(manifest);
+
+		File blocker = new File("tmp1", "1t");
+		assertTrue(blocker.mkdirs());
+		assertThrows(IOException.class, () -> b.build().sort());
+		assertEquals(1, Files.readAllLines(Paths.get(manifest)).stream().filter(l -> l.startsWith("run\t")).count());
+		assertEquals(1, new File("tmp1").list().length); // only the blocker
+
+		// fix the disk and go on
+		assertTrue(blocker.delete());
+		ExternalSort e = b.build();
+		String resultFileName = e.resume();
+
+		// checks
+		performChecks(inputFileName, resultFileName, e);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+		removeFile(manifest);
+		assertEquals(0, new File("tmp0").list().length + new File("tmp1").list().length);
+		removeFile("tmp0");
+		removeFile("tmp1");
+	}
+
+	/**
+	 * Empty input gives an empty result and an empty iterator.
+	 */
+	@Test
+	void emptyInput() throws IOException {
+		String inputFileName = "empty.txt";
+		createWriter(inputFileName).close();
+
+		String resultFileName = new ExternalSort(inputFileName, 1_000).sort();
+		assertEquals(0, new File(resultFileName).length());
+
+		try (ExternalSort.SortedIterator it = ExternalSort.builder(inputFileName).limit(1_000).build().iterator()) {
+			assertFalse(it.hasNext());
+		}
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Check if it is sorted.
+	 *
+	 * Input fits into one run in a temp dir - the run is moved to the working
+	 * directory as the result, nothing is left in the temp dir.
+	 * Total number in input file is 500.
+	 */
+	@Test
+	void singleRun_tempDirs_limit_1K_total_500() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_500.txt";
+		int n = 500; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(1_000)
+				.tempDirs("tmp0")
+				.build();
+		String resultFileName = e.sort();
+
+		// checks
+		assertEquals("result", resultFileName);
+		assertEquals(0, new File("tmp0").list().length);
+		performChecks(inputFileName, resultFileName, e);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+		removeFile("tmp0");
+	}
+
+	/**
+	 * Check the metrics and the listener.
+	 *
+	 * Limit each temp file by 1_000 lines, 100 runs are merged 10 at a time.
+	 * Total number in input file is 100K.
+	 */
+	@Test
+	void metrics_limit_1K_total_100K() throws IOException {
+
+		// generate file
+		String inputFileName = "randomNumbers_100K.txt";
+		int n = 100_000; // number of items
+		generateFileWithNumbers(n, 1_000_000, inputFileName);
+
+		List<String> events = new ArrayList<>();
+		SortListener listener = new SortListener() {
+			@Override
+			public void phaseStarted(SortMetrics.Phase phase) {
+				events.add("start " + phase);
+			}
+
+			@Override
+			public void phaseFinished(SortMetrics.Phase phase, SortMetrics metrics) {
+				events.add("end " + phase);
+			}
+
+			@Override
+			public void runCreated(String name, long records) {
+				assertEquals(1_000, records);
+			}
+
+			@Override
+			public void mergeStarted(List<String> names, String newName) {
+				events.add("merge " + names.size());
+			}
+		};
+
+		ExternalSort e = ExternalSort.builder(inputFileName)
+				.limit(1_000)
+				.fanIn(10)
+				.listener(listener)
+				.build();
+		String resultFileName = e.sort();
+		SortMetrics m = e.metrics();
+		System.out.println(m);
+
+		// 100 runs, (100 - 1) / (10 - 1) = 11 merges of 10
+		assertEquals("start SPLIT", events.get(0));
+		assertEquals("end SPLIT", events.get(1));
+		assertEquals("start MERGE", events.get(2));
+		assertEquals("end MERGE", events.get(events.size() - 1));
+		assertEquals(11, events.stream().filter(s -> s.equals("merge 10")).count());
+
+		assertEquals(100, m.runs());
+		assertEquals(n, m.recordsRead(SortMetrics.Phase.SPLIT));
+		assertEquals(n, m.recordsWritten(SortMetrics.Phase.SPLIT));
+		assertEquals(Files.size(Paths.get(inputFileName)), m.bytesRead(SortMetrics.Phase.SPLIT));
+		assertEquals(11, m.merges());
+		assertEquals(10, m.maxFanIn());
+		assertEquals(m.recordsRead(SortMetrics.Phase.MERGE), m.recordsWritten(SortMetrics.Phase.MERGE));
+		assertTrue(m.recordsWritten(SortMetrics.Phase.MERGE) >= 2L * n);
+		assertTrue(m.bytesWritten(SortMetrics.Phase.MERGE) >= Files.size(Paths.get(resultFileName)));
+		assertTrue(m.compares() >= m.recordsWritten(SortMetrics.Phase.MERGE));
+		assertTrue(m.nanos(SortMetrics.Phase.SPLIT) > 0 && m.nanos(SortMetrics.Phase.MERGE) > 0);
+
+		// cleanup
+		removeFile(inputFileName);
+		removeFile(resultFileName);
+	}
+
+	/**
+	 * Every merge after the first one should be a full fanIn-way merge.
+	 */
+	@Test
+	void mergePlan() {
+		assertEquals(5, ExternalSort.nextMergeWidth(5, 16));
+		assertEquals(2, ExternalSort.nextMergeWidth(5, 4));
+		assertEquals(4, ExternalSort.nextMergeWidth(7, 4));
+		assertEquals(2, ExternalSort.nextMergeWidth(100, 2));
+
+		for (int fanIn = 2; fanIn < 10; fanIn++) {
+			for (int files = fanIn + 1; files < 200; files++) {
+				int left = files - ExternalSort.nextMergeWidth(files, fanIn) + 1;
+				assertEquals(0, (left - 1) % (fanIn - 1));
+			}
+		}
+	}
+
+	private Map<Integer, Integer> countNumbers(String fileName) throws IOException {
+		Map<Integer, Integer> counts = new HashMap<>();
+		BufferedReader r = createReader(fileName);
+		String line = r.readLine();
+		while (line != null) {
+			counts.merge(Integer.parseInt(line), 1, Integer::sum);
+			line = r.readLine();
+		}
+		r.close();
+		return counts;
+	}
+
+	private static void writeLines(String fileName, List<String> lines, int at, String line) throws IOException {
+		try (BufferedWriter w = createWriter(fileName)) {
+			for (int i = 0; i < lines.size(); i++) {
+				w.write(i == at ? line : lines.get(i));
+				w.newLine();
+			}
+		}
+	}
+
 	private void performChecks(String inputFileName, String resultFileName, ExternalSort e) throws IOException {
 
 		Map<Integer, Integer> resultCounts = new HashMap<>();
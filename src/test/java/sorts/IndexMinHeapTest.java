@@ -0,0 +1,103 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexMinHeapTest {
+
+	/**
+	 * Random inserts, decreases and polls against a plain array of keys,
+	 * where the min is found by a scan. Ties are broken by nothing, so only
+	 * the polled key is compared.
+	 */
+	@Test
+	void random_against_scan() {
+		Random random = new Random(1);
+		int n = 1_000;
+		for (int arity : new int[]{2, 3, 4, 8}) {
+			IndexMinHeap heap = new IndexMinHeap(n, arity);
+			long[] keys = new long[n];
+			boolean[] in = new boolean[n];
+			int size = 0;
+			for (int i = 0; i < 100_000; i++) {
+				int id = random.nextInt(n);
+				int op = random.nextInt(3);
+				if (op == 0 && !in[id]) {
+					long key = random.nextInt(10_000) - 5_000;
+					heap.insert(id, key);
+					keys[id] = key;
+					in[id] = true;
+					size++;
+				} else if (op == 1 && in[id]) {
+					long key = keys[id] - random.nextInt(100);
+					heap.decreaseKey(id, key);
+					keys[id] = key;
+				} else if (size > 0) {
+					long min = Long.MAX_VALUE;
+					for (int j = 0; j < n; j++) {
+						if (in[j]) min = Math.min(min, keys[j]);
+					}
+					assertEquals(min, heap.minKey());
+					int polled = heap.pollMin();
+					assertTrue(in[polled]);
+					assertEquals(min, keys[polled]);
+					in[polled] = false;
+					size--;
+				}
+				assertEquals(size, heap.size());
+				assertEquals(in[id], heap.contains(id));
+				if (in[id]) assertEquals(keys[id], heap.keyOf(id));
+			}
+		}
+	}
+
+	@Test
+	void insertOrDecrease() {
+		IndexMinHeap heap = new IndexMinHeap(3);
+		assertTrue(heap.insertOrDecrease(1, 10));
+		assertFalse(heap.insertOrDecrease(1, 10));
+		assertFalse(heap.insertOrDecrease(1, 20));
+		assertTrue(heap.insertOrDecrease(1, 5));
+		assertTrue(heap.insertOrDecrease(2, 7));
+		assertEquals(5, heap.keyOf(1));
+		assertEquals(1, heap.pollMin());
+		assertEquals(2, heap.pollMin());
+		assertTrue(heap.isEmpty());
+		assertTrue(heap.insertOrDecrease(1, 30));
+		assertEquals(30, heap.minKey());
+	}
+
+	@Test
+	void clear() {
+		IndexMinHeap heap = new IndexMinHeap(4);
+		heap.insert(0, 3);
+		heap.insert(3, 1);
+		heap.clear();
+		assertTrue(heap.isEmpty());
+		assertFalse(heap.contains(0));
+		assertFalse(heap.contains(3));
+		heap.insert(3, 2);
+		assertEquals(3, heap.peekMin());
+	}
+
+	@Test
+	void errors() {
+		IndexMinHeap heap = new IndexMinHeap(2);
+		assertThrows(NoSuchElementException.class, heap::pollMin);
+		assertThrows(NoSuchElementException.class, heap::minKey);
+		assertThrows(NoSuchElementException.class, () -> heap.decreaseKey(0, 1));
+		assertThrows(NoSuchElementException.class, () -> heap.keyOf(0));
+		heap.insert(0, 5);
+		assertThrows(IllegalArgumentException.class, () -> heap.insert(0, 1));
+		assertThrows(IllegalArgumentException.class, () -> heap.decreaseKey(0, 6));
+		assertThrows(IllegalArgumentException.class, () -> new IndexMinHeap(2, 1));
+		assertThrows(IllegalArgumentException.class, () -> new IndexMinHeap(-1));
+	}
+}
@@ -0,0 +1,81 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IntHeapTest {
+
+	/**
+	 * Random adds and polls against java.util.PriorityQueue, LongHeap gets
+	 * the same keys shifted to the high half.
+	 */
+	@Test
+	void random_against_PriorityQueue() {
+		Random random = new Random(1);
+		for (boolean max : new boolean[]{false, true}) {
+			for (int arity : new int[]{2, 3, 4, 8}) {
+				IntHeap heap = new IntHeap(max, arity, 0);
+				LongHeap longHeap = new LongHeap(max, arity, 0);
+				PriorityQueue<Integer> expected = max ? new PriorityQueue<>(Collections.reverseOrder()) : new PriorityQueue<>();
+				for (int i = 0; i < 100_000; i++) {
+					if (random.nextInt(3) != 0 || expected.isEmpty()) {
+						int x = random.nextInt(1_000) - 500;
+						heap.add(x);
+						longHeap.add((long) x << 32);
+						expected.add(x);
+					} else if (random.nextBoolean()) {
+						int x = random.nextInt();
+						assertEquals((int) expected.poll(), heap.replaceTop(x));
+						longHeap.replaceTop((long) x << 32);
+						expected.add(x);
+					} else {
+						assertEquals((int) expected.poll(), heap.poll());
+						longHeap.poll();
+					}
+					assertEquals(expected.size(), heap.size());
+					if (!expected.isEmpty()) {
+						assertEquals((int) expected.peek(), heap.peek());
+						assertEquals((long) expected.peek() << 32, longHeap.peek());
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void addAll_pollInto_drain() {
+		Random random = new Random(2);
+		int[] a = random.ints(10_000).toArray();
+		a[0] = Integer.MIN_VALUE;
+		a[1] = Integer.MAX_VALUE;
+		int[] sorted = a.clone();
+		Arrays.sort(sorted);
+
+		// bottom up into an empty heap, then one by one into a big one
+		IntHeap heap = IntHeap.minHeap();
+		heap.addAll(a, 0, 9_000);
+		heap.addAll(a, 9_000, a.length);
+		int[] polled = new int[a.length + 1];
+		assertEquals(100, heap.pollInto(polled, 1, 100));
+		assertEquals(a.length - 100, heap.pollInto(polled, 101, a.length));
+		assertArrayEquals(sorted, Arrays.copyOfRange(polled, 1, polled.length));
+		assertEquals(0, heap.pollInto(polled, 0, 1));
+
+		IntHeap maxHeap = IntHeap.maxHeap();
+		maxHeap.addAll(a, 0, a.length);
+		int[] drained = new int[a.length];
+		int[] i = {a.length};
+		maxHeap.drain(x -> drained[--i[0]] = x);
+		assertArrayEquals(sorted, drained);
+		assertThrows(NoSuchElementException.class, maxHeap::poll);
+	}
+}
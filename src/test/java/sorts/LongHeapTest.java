@@ -0,0 +1,102 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHeapTest {
+
+	/**
+	 * Random adds and polls against java.util.PriorityQueue, keys are far
+	 * beyond the int range and have duplicates.
+	 */
+	@Test
+	void random_against_PriorityQueue() {
+		Random random = new Random(1);
+		for (boolean max : new boolean[]{false, true}) {
+			for (int arity : new int[]{2, 3, 4, 8}) {
+				LongHeap heap = new LongHeap(max, arity, 0);
+				PriorityQueue<Long> expected = max ? new PriorityQueue<>(Collections.reverseOrder()) : new PriorityQueue<>();
+				for (int i = 0; i < 100_000; i++) {
+					if (random.nextInt(3) != 0 || expected.isEmpty()) {
+						long x = (random.nextInt(1_000) - 500) * 10_000_000_000L;
+						heap.add(x);
+						expected.add(x);
+					} else if (random.nextBoolean()) {
+						long x = random.nextLong();
+						assertEquals((long) expected.poll(), heap.replaceTop(x));
+						expected.add(x);
+					} else {
+						assertEquals((long) expected.poll(), heap.poll());
+					}
+					assertEquals(expected.size(), heap.size());
+					if (!expected.isEmpty()) {
+						assertEquals((long) expected.peek(), heap.peek());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * ~x of a max heap must not overflow on the ends of the range.
+	 */
+	@Test
+	void minValue_maxValue() {
+		long[] keys = {0, Long.MAX_VALUE, -1, Long.MIN_VALUE, 1L << 40, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1};
+		long[] sorted = keys.clone();
+		Arrays.sort(sorted);
+
+		LongHeap minHeap = LongHeap.minHeap();
+		LongHeap maxHeap = LongHeap.maxHeap();
+		for (long x : keys) {
+			minHeap.add(x);
+			maxHeap.add(x);
+		}
+		assertEquals(Long.MIN_VALUE, minHeap.peek());
+		assertEquals(Long.MAX_VALUE, maxHeap.peek());
+		for (int i = 0; i < sorted.length; i++) {
+			assertEquals(sorted[i], minHeap.poll());
+			assertEquals(sorted[sorted.length - 1 - i], maxHeap.poll());
+		}
+		assertTrue(minHeap.isEmpty());
+		assertTrue(maxHeap.isEmpty());
+	}
+
+	@Test
+	void addAll_pollInto_drain() {
+		Random random = new Random(2);
+		long[] a = random.longs(10_000).toArray();
+		a[0] = Long.MIN_VALUE;
+		a[1] = Long.MAX_VALUE;
+		long[] sorted = a.clone();
+		Arrays.sort(sorted);
+
+		// bottom up into an empty heap, then one by one into a big one
+		LongHeap heap = LongHeap.minHeap();
+		heap.addAll(a, 0, 9_000);
+		heap.addAll(a, 9_000, a.length);
+		long[] polled = new long[a.length + 1];
+		assertEquals(100, heap.pollInto(polled, 1, 100));
+		assertEquals(a.length - 100, heap.pollInto(polled, 101, a.length));
+		assertArrayEquals(sorted, Arrays.copyOfRange(polled, 1, polled.length));
+		assertEquals(0, heap.pollInto(polled, 0, 1));
+
+		LongHeap maxHeap = LongHeap.maxHeap();
+		maxHeap.addAll(a, 0, a.length);
+		long[] drained = new long[a.length];
+		int[] i = {a.length};
+		maxHeap.drain(x -> drained[--i[0]] = x);
+		assertArrayEquals(sorted, drained);
+		assertThrows(NoSuchElementException.class, maxHeap::poll);
+	}
+}
@@ -0,0 +1,108 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiQueueTest {
+
+	/**
+	 * With one heap the queue is exact.
+	 */
+	@Test
+	void oneHeap_isExact() {
+		for (boolean max : new boolean[]{false, true}) {
+			MultiQueue q = new MultiQueue(max, 1, 1);
+			long[] a = {5, -3, Long.MIN_VALUE, 7, 0, 7, Long.MAX_VALUE - 1};
+			for (long x : a) q.add(x);
+			long[] expected = a.clone();
+			Arrays.sort(expected);
+			if (max) reverse(expected);
+			long[] actual = new long[a.length];
+			for (int i = 0; i < a.length; i++) actual[i] = q.poll();
+			assertArrayEquals(expected, actual);
+			assertTrue(q.isEmpty());
+			assertThrows(NoSuchElementException.class, q::poll);
+		}
+	}
+
+	/**
+	 * Polls of a queue of 0..n-1 are not sorted, but are close to it - every
+	 * polled key is near the count of keys polled before it.
+	 */
+	@Test
+	void relaxedOrder_rankError() {
+		int n = 100_000;
+		int heaps = 16;
+		MultiQueue q = new MultiQueue(false, heaps / 2, 2);
+		for (int i = 0; i < n; i++) q.add(i);
+		long maxError = 0;
+		for (int i = 0; i < n; i++) {
+			maxError = Math.max(maxError, Math.abs(q.poll() - i));
+		}
+		assertTrue(maxError < n / 10, "rank error " + maxError);
+		assertTrue(q.isEmpty());
+	}
+
+	/**
+	 * Threads add at the same time, then poll at the same time, every key
+	 * comes out once. Polls start after all adds, so none of them can find
+	 * the queue empty.
+	 */
+	@Test
+	void concurrent_addThenPoll() throws Exception {
+		int threads = 4;
+		int perThread = 100_000;
+		MultiQueue q = new MultiQueue(false, threads, 2);
+		long[][] polled = new long[threads][perThread];
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] futures = new Future<?>[threads];
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures[t] = pool.submit(() -> {
+					for (int i = 0; i < perThread; i++) {
+						q.add((long) thread * perThread + i);
+					}
+				});
+			}
+			for (Future<?> f : futures) f.get();
+			assertEquals(threads * perThread, q.size());
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures[t] = pool.submit(() -> {
+					for (int i = 0; i < perThread; i++) {
+						polled[thread][i] = q.poll();
+					}
+				});
+			}
+			for (Future<?> f : futures) f.get();
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		long[] all = Arrays.stream(polled).flatMapToLong(Arrays::stream).sorted().toArray();
+		for (int i = 0; i < all.length; i++) {
+			assertEquals(i, all[i]);
+		}
+		assertTrue(q.isEmpty());
+	}
+
+	private static void reverse(long[] a) {
+		for (int i = 0, j = a.length - 1; i < j; i++, j--) {
+			long t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+	/**
+	 * Ranks of the answers are within 2% of the asked ones.
+	 */
+	@Test
+	void random_1M() {
+		int n = 1_000_000;
+		int[] a = new int[n];
+		Random random = new Random(7);
+		QuantileSketch sketch = new QuantileSketch(200, new SplittableRandom(7));
+		for (int i = 0; i < n; i++) {
+			a[i] = random.nextInt();
+			sketch.add(a[i]);
+		}
+		Arrays.sort(a);
+
+		assertEquals(n, sketch.count());
+		for (double q = 0.01; q < 1; q += 0.01) {
+			assertRank(a, sketch.quantile(q), q, 0.02);
+		}
+	}
+
+	/**
+	 * Sketch of two halves merged is as good as the sketch of the whole.
+	 */
+	@Test
+	void merge_sorted_halves() {
+		int n = 200_000;
+		QuantileSketch left = new QuantileSketch(200, new SplittableRandom(1));
+		QuantileSketch right = new QuantileSketch(200, new SplittableRandom(2));
+		for (int i = 0; i < n / 2; i++) left.add(i);
+		for (int i = n / 2; i < n; i++) right.add(i);
+
+		left.merge(right);
+
+		assertEquals(n, left.count());
+		assertTrue(Math.abs(left.quantile(0.5) - n / 2) < n * 0.02);
+		assertTrue(Math.abs(left.quantile(0.9) - n * 9 / 10) < n * 0.02);
+	}
+
+	private void assertRank(int[] sorted, int x, double q, double eps) {
+		int rank = Arrays.binarySearch(sorted, x);
+		assertTrue(rank >= 0);
+		double got = (double) rank / sorted.length;
+		assertTrue(Math.abs(got - q) <= eps, "q: " + q + ", got: " + got);
+	}
+}
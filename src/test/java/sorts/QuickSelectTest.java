@@ -0,0 +1,155 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuickSelectTest {
+
+	private static final int N = 100_000;
+
+	@Test
+	void select() {
+		for (int[] input : inputs(N)) {
+			int[] sorted = sorted(input);
+			for (int k : ks(input.length)) {
+				int[] a = input.clone();
+				assertEquals(sorted[k], QuickSelect.select(a, k));
+				assertSelected(a, k);
+
+				long[] b = toLongs(input);
+				assertEquals(sorted[k], QuickSelect.select(b, k));
+				assertEquals(sorted[k], b[k]);
+			}
+		}
+	}
+
+	/**
+	 * No levels with the ninther - median of medians all the way.
+	 */
+	@Test
+	void medianOfMedians() {
+		for (int[] input : inputs(N)) {
+			int[] sorted = sorted(input);
+			for (int k : ks(input.length)) {
+				int[] a = input.clone();
+				QuickSelect.select(a, 0, a.length - 1, k, 0);
+				assertEquals(sorted[k], a[k]);
+				assertSelected(a, k);
+
+				long[] b = toLongs(input);
+				QuickSelect.select(b, 0, b.length - 1, k, 0);
+				assertEquals(sorted[k], b[k]);
+			}
+		}
+	}
+
+	@Test
+	void selectInRange() {
+		int[] a = new Random(1).ints(1_000).toArray();
+		int[] expected = a.clone();
+		Arrays.sort(expected, 100, 900);
+		assertEquals(expected[500], QuickSelect.select(a, 100, 900, 500));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(expected[i], a[i]);
+		}
+		assertThrows(IllegalArgumentException.class, () -> QuickSelect.select(a, 100, 900, 900));
+	}
+
+	@Test
+	void partialSort() {
+		for (int[] input : inputs(N)) {
+			int[] sorted = sorted(input);
+			for (int k : new int[]{0, 1, 10, input.length / 2, input.length}) {
+				if (k > input.length) continue;
+				int[] a = input.clone();
+				QuickSelect.partialSort(a, k);
+				assertArrayEquals(Arrays.copyOf(sorted, k), Arrays.copyOf(a, k));
+
+				long[] b = toLongs(input);
+				QuickSelect.partialSort(b, k);
+				for (int i = 0; i < k; i++) {
+					assertEquals(sorted[i], b[i]);
+				}
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> QuickSelect.partialSort(new int[3], 4));
+	}
+
+	@Test
+	void parallel() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int[] input : inputs(1 << 20)) {
+			int[] sorted = sorted(input);
+			for (int k : ks(input.length)) {
+				int[] a = input.clone();
+				assertEquals(sorted[k], QuickSelect.parallelSelect(a, k, pool));
+				assertSelected(a, k);
+
+				long[] b = toLongs(input);
+				assertEquals(sorted[k], QuickSelect.parallelSelect(b, k, pool));
+				assertEquals(sorted[k], b[k]);
+			}
+			int k = Math.min(1_000, input.length);
+			int[] a = input.clone();
+			QuickSelect.parallelPartialSort(a, k, pool);
+			assertArrayEquals(Arrays.copyOf(sorted, k), Arrays.copyOf(a, k));
+			long[] b = toLongs(input);
+			QuickSelect.parallelPartialSort(b, k, pool);
+			for (int i = 0; i < k; i++) {
+				assertEquals(sorted[i], b[i]);
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Random, few distinct keys, sorted, reversed, all equal and tiny arrays.
+	 */
+	private static int[][] inputs(int n) {
+		Random random = new Random(n);
+		int[][] inputs = new int[7][];
+		inputs[0] = random.ints(n).toArray();
+		inputs[1] = random.ints(n, 0, 4).toArray();
+		inputs[2] = new int[n];
+		inputs[3] = new int[n];
+		for (int i = 0; i < n; i++) {
+			inputs[2][i] = i;
+			inputs[3][i] = n - i;
+		}
+		inputs[4] = new int[n];
+		inputs[5] = new int[]{3};
+		inputs[6] = new int[]{2, 1, 2, 1, 0};
+		return inputs;
+	}
+
+	private static int[] ks(int n) {
+		return new int[]{0, n / 3, n / 2, n - 1};
+	}
+
+	private static int[] sorted(int[] a) {
+		int[] sorted = a.clone();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private static long[] toLongs(int[] a) {
+		return Arrays.stream(a).asLongStream().toArray();
+	}
+
+	private static void assertSelected(int[] a, int k) {
+		for (int i = 0; i < k; i++) {
+			assertTrue(a[i] <= a[k]);
+		}
+		for (int i = k + 1; i < a.length; i++) {
+			assertTrue(a[i] >= a[k]);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class QuickThreeWaySortTest {
+
+	private static final int N = 200_000;
+
+	@Test
+	void recursive() {
+		checkInts(QuickThreeWaySort.Recursive::sort);
+		checkLongs(QuickThreeWaySort.Recursive::sort);
+		checkObjects(a -> QuickThreeWaySort.Recursive.sort(a, Comparator.reverseOrder()));
+	}
+
+	@Test
+	void iterative() {
+		checkInts(QuickThreeWaySort.Iterative::sort);
+		checkLongs(QuickThreeWaySort.Iterative::sort);
+		checkObjects(a -> QuickThreeWaySort.Iterative.sort(a, Comparator.reverseOrder()));
+	}
+
+	@Test
+	void parallel() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		checkInts(a -> QuickThreeWaySort.Parallel.sort(a, pool));
+		checkLongs(a -> QuickThreeWaySort.Parallel.sort(a, pool));
+		checkObjects(a -> QuickThreeWaySort.Parallel.sort(a, Comparator.reverseOrder(), pool));
+		pool.shutdown();
+	}
+
+	/**
+	 * No levels of partitioning left - all of it is heap sort.
+	 */
+	@Test
+	void depthGuard() {
+		checkInts(a -> QuickThreeWaySort.Iterative.sort(a, 0, a.length - 1, 0));
+		checkLongs(a -> QuickThreeWaySort.Iterative.sort(a, 0, a.length - 1, 0));
+		checkObjects(a -> QuickThreeWaySort.Iterative.sort(a, 0, a.length - 1, 0, Comparator.reverseOrder()));
+	}
+
+	/**
+	 * Random, few distinct keys, sorted, reversed, organ pipe, all equal and
+	 * tiny arrays.
+	 */
+	private static int[][] inputs() {
+		Random random = new Random(N);
+		int[][] inputs = new int[9][];
+		inputs[0] = random.ints(N).toArray();
+		inputs[1] = random.ints(N, 0, 4).toArray();
+		inputs[2] = random.ints(N, 0, 1_000).toArray();
+		inputs[3] = new int[N];
+		inputs[4] = new int[N];
+		inputs[5] = new int[N];
+		for (int i = 0; i < N; i++) {
+			inputs[3][i] = i;
+			inputs[4][i] = N - i;
+			inputs[5][i] = Math.min(i, N - i);
+		}
+		inputs[6] = new int[N];
+		inputs[7] = new int[0];
+		inputs[8] = new int[]{3, Integer.MIN_VALUE, Integer.MAX_VALUE, 3, -1};
+		return inputs;
+	}
+
+	private static void checkInts(Consumer<int[]> sort) {
+		for (int[] a : inputs()) {
+			int[] expected = a.clone();
+			Arrays.sort(expected);
+			sort.accept(a);
+			assertArrayEquals(expected, a);
+		}
+	}
+
+	private static void checkLongs(Consumer<long[]> sort) {
+		for (int[] in : inputs()) {
+			long[] a = Arrays.stream(in).mapToLong(x -> (long) x * x * (x < 0 ? -1 : 1)).toArray();
+			long[] expected = a.clone();
+			Arrays.sort(expected);
+			sort.accept(a);
+			assertArrayEquals(expected, a);
+		}
+	}
+
+	private static void checkObjects(Consumer<String[]> reverseSort) {
+		for (int[] in : inputs()) {
+			String[] a = Arrays.stream(in).mapToObj(x -> "k" + (x & 0xffff)).toArray(String[]::new);
+			String[] expected = a.clone();
+			Arrays.sort(expected, Comparator.reverseOrder());
+			reverseSort.accept(a);
+			assertArrayEquals(expected, a);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class RadixSortTest {
+
+	private static final int N = 1_000_000;
+
+	@Test
+	void ints() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int[] a : inputs()) {
+			int[] expected = a.clone();
+			Arrays.sort(expected);
+
+			int[] b = a.clone();
+			RadixSort.sort(b);
+			assertArrayEquals(expected, b);
+
+			b = a.clone();
+			RadixSort.parallelSort(b, pool);
+			assertArrayEquals(expected, b);
+
+			// only the middle
+			if (a.length > 2) {
+				b = a.clone();
+				int[] c = a.clone();
+				RadixSort.sort(b, 1, a.length - 1);
+				Arrays.sort(c, 1, a.length - 1);
+				assertArrayEquals(c, b);
+			}
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	void longs() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int[] in : inputs()) {
+			long[] a = Arrays.stream(in).mapToLong(x -> (long) x << (x & 31) ^ x).toArray();
+			long[] expected = a.clone();
+			Arrays.sort(expected);
+
+			long[] b = a.clone();
+			RadixSort.sort(b);
+			assertArrayEquals(expected, b);
+
+			b = a.clone();
+			RadixSort.parallelSort(b, pool);
+			assertArrayEquals(expected, b);
+
+			if (a.length > 2) {
+				b = a.clone();
+				long[] c = a.clone();
+				RadixSort.sort(b, 1, a.length - 1);
+				Arrays.sort(c, 1, a.length - 1);
+				assertArrayEquals(c, b);
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Random, small range (most passes skipped), negative only, all equal,
+	 * extremes, sorted and small arrays.
+	 */
+	private static int[][] inputs() {
+		Random random = new Random(N);
+		int[] sorted = new int[N];
+		for (int i = 0; i < N; i++) {
+			sorted[i] = i - N / 2;
+		}
+		return new int[][]{
+				random.ints(N).toArray(),
+				random.ints(N, 0, 1_000).toArray(),
+				random.ints(N, Integer.MIN_VALUE, 0).toArray(),
+				new int[N],
+				random.ints(N, 0, 2).map(x -> x == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE).toArray(),
+				sorted,
+				random.ints(1_000).toArray(),
+				random.ints(100).toArray(),
+				new int[0]
+		};
+	}
+}
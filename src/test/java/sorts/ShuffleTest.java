@@ -0,0 +1,117 @@
+package sorts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShuffleTest {
+
+	@Test
+	void sameSeed_sameOrder() {
+		int[] a = range(1_000);
+		int[] b = range(1_000);
+		Shuffle.shuffleIntArray(a, 7);
+		Shuffle.shuffleIntArray(b, 7);
+		assertArrayEquals(a, b);
+		assertFalse(Arrays.equals(range(1_000), a));
+		assertPermutation(a);
+
+		long[] c = longRange(1_000);
+		Shuffle.shuffleLongArray(c, 7);
+		for (int i = 0; i < a.length; i++) {
+			assertEquals(a[i], c[i]);
+		}
+	}
+
+	/**
+	 * Every element of 0..3 ends up at every place about as often.
+	 */
+	@Test
+	void shuffle_isUniform() {
+		int n = 4;
+		int trials = 100_000;
+		int[][] count = new int[n][n];
+		SplittableRandom random = new SplittableRandom(1);
+		for (int t = 0; t < trials; t++) {
+			int[] a = range(n);
+			Shuffle.shuffleIntArray(a, random);
+			for (int i = 0; i < n; i++) {
+				count[a[i]][i]++;
+			}
+		}
+		for (int[] row : count) {
+			for (int c : row) {
+				assertEquals(trials / n, c, trials / n / 20);
+			}
+		}
+	}
+
+	/**
+	 * Same order on any count of threads, a permutation, and elements of the
+	 * first half spread evenly over both halves.
+	 */
+	@Test
+	void parallelShuffle_1M() {
+		int n = 1 << 20;
+		int[] a = range(n);
+		Shuffle.parallelShuffle(a, new SplittableRandom(3), new ForkJoinPool(1));
+		int[] b = range(n);
+		Shuffle.parallelShuffle(b, new SplittableRandom(3), new ForkJoinPool(4));
+		assertArrayEquals(a, b);
+		assertPermutation(a);
+		int firstHalf = 0;
+		for (int i = 0; i < n / 2; i++) {
+			if (a[i] < n / 2) firstHalf++;
+		}
+		assertEquals(n / 4, firstHalf, n / 100);
+
+		long[] c = longRange(n);
+		Shuffle.parallelShuffle(c, 3);
+		for (int i = 0; i < n; i++) {
+			assertEquals(a[i], c[i]);
+		}
+	}
+
+	@Test
+	void permutation() {
+		for (int n : new int[]{0, 1, 2, 3, 5, 16, 17, 1_000, 65_537}) {
+			PrimitiveIterator.OfInt it = Shuffle.permutation(n, n);
+			int[] a = new int[n];
+			for (int i = 0; i < n; i++) {
+				assertTrue(it.hasNext());
+				a[i] = it.nextInt();
+			}
+			assertFalse(it.hasNext());
+			assertPermutation(a);
+			if (n >= 1_000) {
+				assertFalse(Arrays.equals(range(n), a));
+			}
+		}
+	}
+
+	private static int[] range(int n) {
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++) a[i] = i;
+		return a;
+	}
+
+	private static long[] longRange(int n) {
+		long[] a = new long[n];
+		for (int i = 0; i < n; i++) a[i] = i;
+		return a;
+	}
+
+	private static void assertPermutation(int[] a) {
+		int[] sorted = a.clone();
+		Arrays.sort(sorted);
+		assertArrayEquals(range(a.length), sorted);
+	}
+}